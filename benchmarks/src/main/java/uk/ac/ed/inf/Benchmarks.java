@@ -0,0 +1,44 @@
+package uk.ac.ed.inf;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+
+/**
+ * The entry point of the benchmarks. It runs the benchmarks chosen on the command line, which
+ * takes the same options as JMH itself, and always adds the GC profiler so that the allocation
+ * rate per operation is reported next to the throughput.
+ */
+public class Benchmarks {
+    /**
+     * @param args the JMH command line options, such as a pattern matching the benchmarks to run
+     */
+    public static void main(String[] args) {
+        try {
+            CommandLineOptions commandLine = new CommandLineOptions(args);
+            if (commandLine.shouldHelp()) {
+                commandLine.showHelp();
+                return;
+            }
+            if (commandLine.shouldList()) {
+                new Runner(commandLine).list();
+                return;
+            }
+            new Runner(new OptionsBuilder().parent(commandLine).addProfiler(GCProfiler.class).build()).run();
+        } catch (CommandLineOptionException e) {
+            System.err.println("The benchmark options could not be read: " + e.getMessage());
+            System.exit(1);
+        } catch (IOException e) {
+            System.err.println("The benchmark options could not be shown: " + e.getMessage());
+            System.exit(1);
+        } catch (RunnerException e) {
+            System.err.println("Something went wrong when running the benchmarks: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
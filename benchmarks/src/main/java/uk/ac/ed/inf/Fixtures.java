@@ -0,0 +1,153 @@
+package uk.ac.ed.inf;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.mapbox.geojson.Feature;
+import com.mapbox.geojson.FeatureCollection;
+import com.mapbox.geojson.Point;
+import com.mapbox.geojson.Polygon;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Loads the data the benchmarks are run on from the fixtures directory. There is a set of orders
+ * for each of the reference days in the drone-*.geojson files, made from the hover points on the
+ * path flown that day, together with the shops, no-fly zone and landmarks they were planned around.
+ */
+public class Fixtures {
+    /** the reference days there are orders for, as day-month-year */
+    public static final String[] DAYS = {
+            "01-01-2022", "02-02-2022", "03-03-2022", "04-04-2022", "05-05-2022", "06-06-2022",
+            "07-07-2022", "08-08-2022", "09-09-2022", "10-10-2022", "11-11-2022", "12-12-2022"
+    };
+
+    /** the points outlining each polygon of the no-fly zone */
+    private final List<List<Point>> noFlyPolygons = new ArrayList<>();
+    /** the locations of the landmarks */
+    private final List<LongLat> landmarks = new ArrayList<>();
+    /** each shop and its location */
+    private final Map<String, LongLat> shopLocations = new HashMap<>();
+
+    /**
+     * Constructor for Fixtures class, loading the no-fly zone, landmarks and shops.
+     */
+    public Fixtures() {
+        for (Feature feature : features("no-fly-zones.geojson")) {
+            noFlyPolygons.add(((Polygon) feature.geometry()).coordinates().get(0));
+        }
+        for (Feature feature : features("landmarks.geojson")) {
+            Point point = (Point) feature.geometry();
+            landmarks.add(new LongLat(point.longitude(), point.latitude()));
+        }
+        Type shopType = new TypeToken<Map<String, double[]>>() {}.getType();
+        Map<String, double[]> shops = new Gson().fromJson(read("shops.json"), shopType);
+        for (Map.Entry<String, double[]> shop : shops.entrySet()) {
+            shopLocations.put(shop.getKey(), new LongLat(shop.getValue()[0], shop.getValue()[1]));
+        }
+    }
+
+    /**
+     * Loads the orders for a reference day. A new list of new orders is made on every call,
+     * as planning a path removes orders from the list it is given.
+     *
+     * @param day the reference day, as day-month-year
+     * @return an ArrayList of the orders for the day
+     */
+    public ArrayList<Order> orders(String day) {
+        Type listType = new TypeToken<List<FixtureOrder>>() {}.getType();
+        List<FixtureOrder> fixtureOrders = new Gson().fromJson(read("orders-" + day + ".json"), listType);
+        ArrayList<Order> orders = new ArrayList<>();
+        for (FixtureOrder fixtureOrder : fixtureOrders) {
+            orders.add(fixtureOrder.toOrder());
+        }
+        return orders;
+    }
+
+    /**
+     * @param orders the orders for a day
+     * @return a new Path planning the orders around the fixture buildings
+     */
+    public Path path(ArrayList<Order> orders) {
+        return new Path(orders, noFlyPolygons, new ArrayList<>(landmarks), shopLocations);
+    }
+
+    /**
+     * @return a List of the points outlining each polygon of the no-fly zone
+     */
+    public List<List<Point>> getNoFlyPolygons() {
+        return noFlyPolygons;
+    }
+
+    /**
+     * @return a Map containing each shop and its location
+     */
+    public Map<String, LongLat> getShopLocations() {
+        return shopLocations;
+    }
+
+    /**
+     * @param name the name of a GeoJSON fixture
+     * @return the features in the file
+     */
+    private static List<Feature> features(String name) {
+        return FeatureCollection.fromJson(read(name)).features();
+    }
+
+    /**
+     * @param name the name of a fixture
+     * @return the contents of the fixture
+     */
+    private static String read(String name) {
+        try (InputStream in = Fixtures.class.getResourceAsStream("/fixtures/" + name)) {
+            if (in == null) {
+                throw new IllegalArgumentException("No fixture named " + name);
+            }
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * An order as it is stored in a fixture, with its shops and cost already worked out.
+     */
+    private static class FixtureOrder {
+        /** the order number */
+        String orderNo;
+        /** the longitude and latitude the order is delivered to */
+        double[] deliverTo;
+        /** the shops the items are collected from */
+        List<String> shops;
+        /** the total cost of the order in pence */
+        int cost;
+
+        /**
+         * @return an Order with one item from each shop, costing the same as the fixture
+         */
+        Order toOrder() {
+            Order order = new Order(orderNo);
+            Map<String, String> shopMap = new HashMap<>();
+            Map<String, Integer> itemMap = new HashMap<>();
+            int price = cost - 50;
+            for (String shop : shops) {
+                String item = shop + " item";
+                order.items.add(item);
+                shopMap.put(item, shop);
+                itemMap.put(item, price);
+                price = 0;
+            }
+            order.setShops(shopMap);
+            order.setCost(itemMap);
+            order.setDeliverTo(new LongLat(deliverTo[0], deliverTo[1]));
+            return order;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package uk.ac.ed.inf;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures planning a whole day of deliveries with generatePath, for each of the reference days,
+ * both with the orders chosen one at a time and with the order sequencer. A new Path is built
+ * before each call, as planning uses up the orders, and building it is not measured.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class GeneratePathBenchmark {
+    /** the reference day planned */
+    @Param({"01-01-2022", "02-02-2022", "03-03-2022", "04-04-2022", "05-05-2022", "06-06-2022",
+            "07-07-2022", "08-08-2022", "09-09-2022", "10-10-2022", "11-11-2022", "12-12-2022"})
+    public String day;
+    /** whether the orders are sequenced by the order sequencer */
+    @Param({"false", "true"})
+    public boolean optimise;
+
+    /** the fixtures the orders are loaded from */
+    private Fixtures fixtures;
+    /** the path planned by the next call */
+    private Path path;
+    /** the standard output stream, which is silenced while the benchmark runs */
+    private PrintStream standardOut;
+
+    /**
+     * Loads the fixtures, and silences the summary generatePath prints for each day.
+     */
+    @Setup(Level.Trial)
+    public void setUpTrial() {
+        fixtures = new Fixtures();
+        standardOut = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    /**
+     * Builds a new path for the day's orders.
+     */
+    @Setup(Level.Invocation)
+    public void setUpPath() {
+        path = fixtures.path(fixtures.orders(day));
+        path.setOptimiseSequence(optimise);
+    }
+
+    /**
+     * @return the orders delivered
+     */
+    @Benchmark
+    public ArrayList<Order> generatePath() {
+        return path.generatePath();
+    }
+
+    /**
+     * Restores the standard output stream.
+     */
+    @TearDown(Level.Trial)
+    public void tearDownTrial() {
+        System.setOut(standardOut);
+    }
+}
@@ -0,0 +1,65 @@
+package uk.ac.ed.inf;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the LongLat functions used for every candidate move, on the shop and delivery
+ * locations of the busiest reference day.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LongLatBenchmark {
+    /** the locations moves are made from and measured between */
+    private LongLat[] locations;
+    /** the index of the next location used */
+    private int next = 0;
+
+    /**
+     * Loads the locations of the shops and deliveries.
+     */
+    @Setup
+    public void setUp() {
+        Fixtures fixtures = new Fixtures();
+        List<LongLat> points = new ArrayList<>(fixtures.getShopLocations().values());
+        for (Order order : fixtures.orders("12-12-2022")) {
+            points.add(order.getDeliverTo());
+        }
+        locations = points.toArray(new LongLat[0]);
+    }
+
+    /**
+     * @return the position after a move at one of the 36 angles, or a hover
+     */
+    @Benchmark
+    public LongLat nextPosition() {
+        int i = next++ % (LongLat.DIRECTIONS + 1);
+        int angle = i == LongLat.DIRECTIONS ? -999 : i * 10;
+        return locations[i % locations.length].nextPosition(angle);
+    }
+
+    /**
+     * @return the distance between two of the locations
+     */
+    @Benchmark
+    public double distanceTo() {
+        int i = next++;
+        return locations[i % locations.length].distanceTo(locations[(i / locations.length) % locations.length]);
+    }
+}
@@ -0,0 +1,90 @@
+package uk.ac.ed.inf;
+
+import com.mapbox.geojson.Point;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the parts of Path run for every move of the drone: choosing the best move, checking a
+ * single move against the confinement area and the no-fly zone, and building the convex hulls.
+ * Moves are made from each shop and delivery location of the busiest reference day towards
+ * each of the others, so some cross the hull and some do not.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PathBenchmark {
+    /** the path the moves are checked against */
+    private Path path;
+    /** the points outlining each polygon of the no-fly zone */
+    private List<List<Point>> noFlyPolygons;
+    /** the locations moves are made from and towards */
+    private LongLat[] locations;
+    /** the index of the next move made */
+    private int next = 0;
+
+    /**
+     * Builds the path and loads the locations of the shops and deliveries.
+     */
+    @Setup
+    public void setUp() {
+        Fixtures fixtures = new Fixtures();
+        ArrayList<Order> orders = fixtures.orders("12-12-2022");
+        List<LongLat> points = new ArrayList<>(fixtures.getShopLocations().values());
+        for (Order order : orders) {
+            points.add(order.getDeliverTo());
+        }
+        locations = points.toArray(new LongLat[0]);
+        noFlyPolygons = fixtures.getNoFlyPolygons();
+        path = fixtures.path(orders);
+    }
+
+    /**
+     * @return the best direction to move in from one location towards another, as used by findMove
+     */
+    @Benchmark
+    public int findMove() {
+        int i = next++;
+        return path.bestDirection(locations[i % locations.length],
+                locations[(i / locations.length) % locations.length]);
+    }
+
+    /**
+     * @return whether a move at one of the 36 angles from one of the locations is valid
+     */
+    @Benchmark
+    public boolean validMove() {
+        int i = next++;
+        int direction = i % LongLat.DIRECTIONS;
+        LongLat from = locations[(i / LongLat.DIRECTIONS) % locations.length];
+        return path.validMove(from.longitude, from.latitude, from.longitude + LongLat.STEP_LONGITUDE[direction],
+                from.latitude + LongLat.STEP_LATITUDE[direction]);
+    }
+
+    /**
+     * @return the corners of the convex hull of each polygon of the no-fly zone
+     */
+    @Benchmark
+    public List<List<LongLat>> convexHull() {
+        List<List<LongLat>> hulls = new ArrayList<>();
+        for (List<Point> polygon : noFlyPolygons) {
+            hulls.add(Path.convexHull(polygon));
+        }
+        return hulls;
+    }
+}
@@ -1,8 +1,17 @@
 package uk.ac.ed.inf;
 
-import com.mapbox.geojson.FeatureCollection;
+import java.io.File;
+import java.io.IOException;
 import java.sql.SQLException;
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * The main class of the drone application. Contains the necessary instances of
@@ -11,37 +20,405 @@ import java.util.ArrayList;
  */
 public class App {
     /**
-     * The entry point of application. Gets the orders from the database, and passes
-     * these to the Path class to get the list of orders which are successfully delivered,
-     * as well as the GeoJSON features of the flightpath. It then calls the methods to write
-     * the GeoJSON string to a file, and write both the flightpath and the list of delivered
-     * orders to their respective tables in the database.
+     * The entry point of application. Gets the orders from the database, passes them to Path to
+     * plan the flightpath, and writes the GeoJSON file and the deliveries and flightpath tables,
+     * overlapping the steps as described in runDay. The timings and counters of the run are
+     * written to metrics-DD-MM-YYYY.json at the end, even if it fails.
+     * <pre>
+     * App DD MM YYYY WEB_PORT DATABASE_PORT [END_DD END_MM END_YYYY [THREADS]] [OPTIONS]
+     * App DD MM YYYY --replay BUNDLE [END_DD END_MM END_YYYY [THREADS]] [OPTIONS]
      *
-     * @param args the input arguments from the command line
+     * END_DD END_MM END_YYYY  plan every day up to the end date, THREADS days at once
+     * --replay BUNDLE         read the files and orders from a bundle instead of the server and database
+     * --record DIRECTORY      record everything read from the server and database into a bundle
+     * --sequence              choose and sequence the orders with the OrderSequencer
+     * --drones N              plan each day for a fleet of N drones
+     * --lookahead N           look N moves ahead when steering towards a goal move by move
+     * --route-cache N         reuse up to N planned legs across the days and drones of the run
+     * </pre>
+     *
+     * @param args the input arguments from the command line, as shown above
      */
     public static void main(String[] args) {
-        String day = args[0];
-        String month = args[1];
-        String year = args[2];
-        String webPort = args[3];
-        String databasePort = args[4];
-
-        WebServer server = new WebServer(webPort);
-        Database db = new Database(day, month, year, databasePort);
-        ArrayList<Order> orders;
-        ArrayList<Order> delivered;
-        FeatureCollection pathFeatures;
+        ArrayList<String> positional = new ArrayList<>();
+        String replay = null;
+        String record = null;
+        int drones = 1;
+        int lookahead = 1;
+        int cacheCapacity = 0;
+        boolean sequence = false;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--sequence")) {
+                sequence = true;
+            } else if (args[i].equals("--replay") && i + 1 < args.length) {
+                replay = args[++i];
+            } else if (args[i].equals("--record") && i + 1 < args.length) {
+                record = args[++i];
+            } else if (args[i].equals("--drones") && i + 1 < args.length) {
+                drones = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--lookahead") && i + 1 < args.length) {
+                lookahead = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--route-cache") && i + 1 < args.length) {
+                cacheCapacity = Integer.parseInt(args[++i]);
+            } else {
+                positional.add(args[i]);
+            }
+        }
+        // there are no ports when replaying, so the end date follows the date
+        int endDate = replay == null ? 5 : 3;
+        if (positional.size() < endDate || (positional.size() > endDate && positional.size() < endDate + 3)) {
+            printUsage();
+            System.exit(1);
+        }
+        String day = positional.get(0);
+        String month = positional.get(1);
+        String year = positional.get(2);
+        String webPort = replay == null ? positional.get(3) : null;
+        String databasePort = replay == null ? positional.get(4) : null;
+        Bundle bundle = replay == null ? null : openBundle(replay);
+        BundleRecorder recorder = record == null ? null : new BundleRecorder(new File(record));
+        RouteCache routeCache = cacheCapacity > 0 ? new RouteCache(cacheCapacity) : null;
+
+        if (positional.size() >= endDate + 3) {
+            LocalDate first = LocalDate.of(Integer.parseInt(year), Integer.parseInt(month), Integer.parseInt(day));
+            LocalDate last = LocalDate.of(Integer.parseInt(positional.get(endDate + 2)),
+                    Integer.parseInt(positional.get(endDate + 1)), Integer.parseInt(positional.get(endDate)));
+            int threads = positional.size() > endDate + 3 ? Integer.parseInt(positional.get(endDate + 3))
+                    : Runtime.getRuntime().availableProcessors();
+            runBatch(first, last, webPort, databasePort, threads, bundle, recorder, drones, lookahead,
+                    routeCache, sequence);
+            return;
+        }
+
+        long runStart = System.nanoTime();
+        Metrics metrics = new Metrics();
+        WebServer server = startServer(webPort, bundle, recorder, metrics);
+        Database db = bundle == null ? new Database(day, month, year, databasePort)
+                : new Database(day, month, year, bundle);
+        db.setRecorder(recorder);
+        db.setMetrics(metrics);
+        ExecutorService executor = Executors.newCachedThreadPool();
+        int status = 0;
         try {
-            orders = db.getOrders(server);
-            Path path = new Path(orders,server);
-            delivered = path.generatePath();
-            pathFeatures = path.getPathFeatures();
-            path.writeGeoJSON(pathFeatures,day,month,year);
-            db.writeOrders(delivered);
-            db.writeFlightpath(path.getFlightpath());
+            runDay(server, db, day, month, year, metrics, drones, lookahead, routeCache, sequence, executor);
         } catch (SQLException dbUnavailable) {
             System.err.println("Something went wrong when trying to communicate with database. Please try again.");
+            status = 1;
+        } catch (CompletionException serverUnavailable) {
+            System.err.println("Something went wrong when trying to communicate with server. Please try again.");
+            status = 1;
+        } finally {
+            executor.shutdown();
+            server.flushCache();
+            db.close();
+            if (bundle != null) {
+                bundle.close();
+            }
+            metrics.addTime(Metrics.WALL, System.nanoTime() - runStart);
+            metrics.writeJson(metricsFile(day, month, year));
+        }
+        if (status != 0) {
+            System.exit(status);
+        }
+    }
+
+    /**
+     * Prints how the application is run, for when the arguments given cannot be used.
+     */
+    private static void printUsage() {
+        System.err.println("Usage: App DD MM YYYY WEB_PORT DATABASE_PORT [END_DD END_MM END_YYYY [THREADS]] [OPTIONS]");
+        System.err.println("       App DD MM YYYY --replay BUNDLE [END_DD END_MM END_YYYY [THREADS]] [OPTIONS]");
+    }
+
+    /**
+     * @param day   the first day of deliveries
+     * @param month the month of the first day of deliveries
+     * @param year  the year of the first day of deliveries
+     * @return the file the metrics of the run are written to
+     */
+    private static File metricsFile(String day, String month, String year) {
+        return new File("metrics-" + day + "-" + month + "-" + year + ".json");
+    }
+
+    /**
+     * @param location the directory or zip archive the bundle is kept in
+     * @return the Bundle, exiting if it cannot be opened
+     */
+    private static Bundle openBundle(String location) {
+        try {
+            return new Bundle(new File(location));
+        } catch (IOException e) {
+            System.err.println("The bundle " + location + " could not be opened.");
+            System.exit(1);
+            return null;
+        }
+    }
+
+    /**
+     * Creates the WebServer, which starts reading its files without waiting for them. The time
+     * until every file has been read is recorded as the fetch phase.
+     *
+     * @param webPort  the port where the web server is running
+     * @param bundle   the bundle the files are read from, or null to use the web server
+     * @param recorder the recorder the files are written to, or null
+     * @param metrics  the registry the fetch time and whatthreewords lookups are recorded in
+     * @return a WebServer reading from the bundle if there is one, and otherwise from the web server
+     */
+    private static WebServer startServer(String webPort, Bundle bundle, BundleRecorder recorder,
+                                         Metrics metrics) {
+        long fetchStart = System.nanoTime();
+        WebServer server = bundle != null ? new WebServer(bundle, metrics)
+                : new WebServer(webPort, recorder, metrics);
+        server.loaded().thenRun(() -> metrics.addTime(Metrics.FETCH, System.nanoTime() - fetchStart));
+        return server;
+    }
+
+    /**
+     * Plans a single day of deliveries and writes its outputs, as a pipeline of stages which each
+     * start as soon as what they need is ready. The orders are read and their addresses looked up
+     * while the web server may still be reading the menus and buildings, planning starts once both
+     * are done, and the GeoJSON file, the deliveries table and the flightpath table are then written
+     * at the same time. When the orders are replayed from a bundle there is no database, so only
+     * the GeoJSON file is written. With more than one drone the orders are planned by a Fleet, and
+     * the flightpath of every drone is written with its id.
+     *
+     * @param server     the web server, shared by every day being planned
+     * @param db         the database for the day
+     * @param day        the day of deliveries
+     * @param month      the month of deliveries
+     * @param year       the year of deliveries
+     * @param metrics    the registry the timings and counters of the day are recorded in
+     * @param drones     the number of drones delivering the orders
+     * @param lookahead  the number of moves each drone looks ahead when choosing a move
+     * @param routeCache the cache of legs shared by the run, or null to plan every leg
+     * @param sequence   whether the orders are sequenced by the order sequencer
+     * @param executor   the executor the stages of the day are run on
+     * @throws SQLException the sql exception if the database is not available
+     */
+    private static void runDay(WebServer server, Database db, String day, String month, String year,
+                               Metrics metrics, int drones, int lookahead, RouteCache routeCache,
+                               boolean sequence, Executor executor) throws SQLException {
+        CompletableFuture<ArrayList<Order>> orders = db.getOrdersAsync(server, executor)
+                .thenCombine(server.loaded(), (dayOrders, loaded) -> dayOrders);
+        CompletableFuture<Void> written = orders.thenComposeAsync(dayOrders -> drones > 1
+                ? runFleet(server, db, day, month, year, metrics, drones, lookahead, routeCache, sequence,
+                        dayOrders, executor)
+                : runPath(server, db, day, month, year, metrics, lookahead, routeCache, sequence, dayOrders,
+                        executor),
+                executor);
+        await(written);
+    }
+
+    /**
+     * Plans a single day of deliveries for one drone, and starts writing its outputs.
+     *
+     * @param server     the web server, shared by every day being planned
+     * @param db         the database for the day
+     * @param day        the day of deliveries
+     * @param month      the month of deliveries
+     * @param year       the year of deliveries
+     * @param metrics    the registry the timings and counters of the day are recorded in
+     * @param lookahead  the number of moves the drone looks ahead when choosing a move
+     * @param routeCache the cache of legs shared by the run, or null to plan every leg
+     * @param sequence   whether the orders are sequenced by the order sequencer
+     * @param orders     the orders for the day
+     * @param executor   the executor the outputs are written on
+     * @return a CompletableFuture which completes once every output has been written
+     */
+    private static CompletableFuture<Void> runPath(WebServer server, Database db, String day, String month,
+                                                   String year, Metrics metrics, int lookahead,
+                                                   RouteCache routeCache, boolean sequence,
+                                                   ArrayList<Order> orders, Executor executor) {
+        Path path = new Path(orders,server);
+        path.setMetrics(metrics);
+        path.setOptimiseSequence(sequence);
+        path.setLookaheadDepth(lookahead);
+        path.setRouteCache(routeCache);
+        ArrayList<Order> delivered = path.generatePath();
+        CompletableFuture<Void> geoJson = CompletableFuture.runAsync(() ->
+                path.writeGeoJSON(new GeoJsonWriter(), day, month, year), executor);
+        if (db.isReplay()) {
+            return geoJson;
+        }
+        return CompletableFuture.allOf(geoJson,
+                writeAsync(() -> db.writeOrders(delivered), executor),
+                writeAsync(() -> db.writeFlightpath(path.getFlightpath()), executor));
+    }
+
+    /**
+     * Plans a single day of deliveries for a fleet of drones, and starts writing its outputs.
+     *
+     * @param server     the web server, shared by every day being planned
+     * @param db         the database for the day
+     * @param day        the day of deliveries
+     * @param month      the month of deliveries
+     * @param year       the year of deliveries
+     * @param metrics    the registry the timings and counters of the day are recorded in
+     * @param drones     the number of drones delivering the orders
+     * @param lookahead  the number of moves each drone looks ahead when choosing a move
+     * @param routeCache the cache of legs shared by the run, or null to plan every leg
+     * @param sequence   whether the orders of each drone are sequenced by the order sequencer
+     * @param orders     the orders for the day
+     * @param executor   the executor the outputs are written on
+     * @return a CompletableFuture which completes once every output has been written
+     */
+    private static CompletableFuture<Void> runFleet(WebServer server, Database db, String day, String month,
+                                                    String year, Metrics metrics, int drones, int lookahead,
+                                                    RouteCache routeCache, boolean sequence,
+                                                    ArrayList<Order> orders, Executor executor) {
+        Fleet fleet = new Fleet(orders, server, drones, metrics);
+        fleet.setOptimiseSequence(sequence);
+        fleet.setLookaheadDepth(lookahead);
+        fleet.setRouteCache(routeCache);
+        ArrayList<Order> delivered = fleet.generatePaths();
+        CompletableFuture<Void> geoJson = CompletableFuture.runAsync(() -> {
+            long writeStart = System.nanoTime();
+            GeoJsonWriter writer = new GeoJsonWriter();
+            try {
+                writer.write(writer.fileFor(day, month, year), fleet.getFlightpaths());
+            } catch (IOException e) {
+                System.out.println("An error occurred.");
+                e.printStackTrace();
+            }
+            metrics.addTime(Metrics.GEOJSON_WRITE, System.nanoTime() - writeStart);
+        }, executor);
+        if (db.isReplay()) {
+            return geoJson;
+        }
+        return CompletableFuture.allOf(geoJson,
+                writeAsync(() -> db.writeOrders(delivered), executor),
+                writeAsync(() -> db.writeFlightpaths(fleet.getFlightpaths()), executor));
+    }
+
+    /**
+     * A write to the database, which may fail with an SQLException.
+     */
+    private interface DatabaseWrite {
+        /**
+         * @throws SQLException the sql exception if the database is not available
+         */
+        void run() throws SQLException;
+    }
+
+    /**
+     * @param write    a write to the database
+     * @param executor the executor the write is run on
+     * @return a CompletableFuture which completes once the write is done, or completes
+     * exceptionally with the SQLException if it fails
+     */
+    private static CompletableFuture<Void> writeAsync(DatabaseWrite write, Executor executor) {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                write.run();
+            } catch (SQLException e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    /**
+     * Waits for the stages of a day to finish. An SQLException or unchecked exception which
+     * made a stage fail is thrown as it is, and any other failure, which can only come from
+     * reading the web server or bundle, is thrown as a CompletionException.
+     *
+     * @param stages the stages to wait for
+     * @throws SQLException the sql exception if the database is not available
+     */
+    private static void await(CompletableFuture<?> stages) throws SQLException {
+        try {
+            stages.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof SQLException) {
+                throw (SQLException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Plans every day from the first date to the last date, several days at once on a pool of
+     * threads. The menus, no-fly zone, landmarks and shop locations are downloaded once and shared
+     * by every day, as is the pool of database connections. Each day writes its own GeoJSON file,
+     * and its own deliveries and flightpath tables, named with the date so that the days do not
+     * overwrite each other. The stages of each day, as described in runDay, run on a second pool
+     * shared by every day. A day which fails is reported without stopping the others. The
+     * timings and counters of every day are recorded together in a single registry, so the time
+     * of each phase is summed over days planned at the same time, and the wall time of the whole
+     * batch is recorded separately.
+     *
+     * @param first        the first day to plan
+     * @param last         the last day to plan
+     * @param webPort      the port where the web server is running
+     * @param databasePort the port where the database is running
+     * @param threads      the number of days to plan at once
+     * @param bundle       the bundle the data is read from, or null to use the web server and database
+     * @param recorder     the recorder the data read is written to, or null
+     * @param drones       the number of drones delivering the orders each day
+     * @param lookahead    the number of moves each drone looks ahead when choosing a move
+     * @param routeCache   the cache of legs shared by every day, or null to plan every leg
+     * @param sequence     whether the orders are sequenced by the order sequencer
+     */
+    private static void runBatch(LocalDate first, LocalDate last, String webPort, String databasePort,
+                                 int threads, Bundle bundle, BundleRecorder recorder, int drones,
+                                 int lookahead, RouteCache routeCache, boolean sequence) {
+        long runStart = System.nanoTime();
+        Metrics metrics = new Metrics();
+        WebServer server = startServer(webPort, bundle, recorder, metrics);
+        ConnectionPool connections = bundle == null
+                ? new ConnectionPool(Database.jdbcString(databasePort), threads) : null;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        ExecutorService stages = Executors.newCachedThreadPool();
+        ArrayList<LocalDate> dates = new ArrayList<>();
+        ArrayList<Future<?>> results = new ArrayList<>();
+        for (LocalDate date = first; !date.isAfter(last); date = date.plusDays(1)) {
+            String day = String.format("%02d", date.getDayOfMonth());
+            String month = String.format("%02d", date.getMonthValue());
+            String year = String.valueOf(date.getYear());
+            Database db = bundle == null ? new Database(day, month, year, connections)
+                    : new Database(day, month, year, bundle);
+            db.setRecorder(recorder);
+            db.setMetrics(metrics);
+            db.setTableSuffix("_" + year + "_" + month + "_" + day);
+            dates.add(date);
+            results.add(executor.submit(() -> {
+                runDay(server, db, day, month, year, metrics, drones, lookahead, routeCache, sequence, stages);
+                return null;
+            }));
+        }
+
+        boolean failed = false;
+        for (int i = 0; i < results.size(); i++) {
+            try {
+                results.get(i).get();
+            } catch (ExecutionException e) {
+                failed = true;
+                System.err.println("Something went wrong when planning " + dates.get(i) + ": " + e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failed = true;
+                break;
+            }
+        }
+        executor.shutdownNow();
+        stages.shutdownNow();
+        server.flushCache();
+        if (connections != null) {
+            connections.close();
+        }
+        if (bundle != null) {
+            bundle.close();
+        }
+        metrics.addTime(Metrics.WALL, System.nanoTime() - runStart);
+        metrics.writeJson(metricsFile(String.format("%02d", first.getDayOfMonth()),
+                String.format("%02d", first.getMonthValue()), String.valueOf(first.getYear())));
+        if (failed) {
             System.exit(1);
         }
     }
-}
\ No newline at end of file
+}
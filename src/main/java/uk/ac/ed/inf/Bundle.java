@@ -0,0 +1,76 @@
+package uk.ac.ed.inf;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+
+/**
+ * A recorded bundle of the data needed to plan deliveries, read from a local directory or zip
+ * archive instead of the web server and the database. The bundle is laid out in the same way as
+ * the web server, with the menus, the whatthreewords details of each address, the no-fly zone and
+ * the landmarks at the same paths, and also holds the orders for each day recorded. The orders for
+ * a day are kept at orders/YYYY-MM-DD.tsv, with one line for each item of each order giving the
+ * order number, the delivery address and the item, separated by tabs.
+ */
+public class Bundle implements AutoCloseable {
+    /** the zip archive the bundle is read from, or null if it is a directory */
+    private final FileSystem archive;
+    /** the directory of the bundle, or the root of the archive */
+    private final java.nio.file.Path root;
+
+    /**
+     * Constructor for Bundle class. A file ending in .zip is opened as an archive, and anything
+     * else is read as a directory.
+     *
+     * @param location the directory or zip archive the bundle is kept in
+     * @throws IOException if the archive cannot be opened
+     */
+    public Bundle(File location) throws IOException {
+        if (location.isFile() && location.getName().endsWith(".zip")) {
+            archive = FileSystems.newFileSystem(location.toPath());
+            root = archive.getPath("/");
+        } else {
+            archive = null;
+            root = location.toPath();
+        }
+    }
+
+    /**
+     * @param day   the day of deliveries
+     * @param month the month of deliveries
+     * @param year  the year of deliveries
+     * @return the path of the orders for the day in the bundle
+     */
+    public static String ordersPath(String day, String month, String year) {
+        return "/orders/" + year + "-" + month + "-" + day + ".tsv";
+    }
+
+    /**
+     * Reads a file from the bundle.
+     *
+     * @param path the path of the file, as it would be on the web server
+     * @return the contents of the file
+     * @throws IOException if the file is not in the bundle or cannot be read
+     */
+    public String read(String path) throws IOException {
+        return new String(Files.readAllBytes(root.resolve(path.substring(1))), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Closes the archive, if the bundle was read from one.
+     */
+    @Override
+    public void close() {
+        if (archive == null) {
+            return;
+        }
+        try {
+            archive.close();
+        } catch (IOException e) {
+            System.err.println("Could not close the bundle.");
+        }
+    }
+}
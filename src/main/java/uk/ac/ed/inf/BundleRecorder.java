@@ -0,0 +1,161 @@
+package uk.ac.ed.inf;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Records the data used by a live run into a directory, laid out as a Bundle so that the
+ * run can be replayed later without the web server or the database. Each file is written as
+ * soon as it is recorded, replacing any earlier copy.
+ */
+public class BundleRecorder {
+    /** the directory the bundle is written to */
+    private final File directory;
+
+    /**
+     * Constructor for BundleRecorder class.
+     *
+     * @param bundleDirectory the directory the bundle is written to, created if it does not exist
+     */
+    public BundleRecorder(File bundleDirectory) {
+        directory = bundleDirectory;
+    }
+
+    /**
+     * Writes a file to the bundle.
+     *
+     * @param path     the path of the file, as it would be on the web server
+     * @param contents the contents of the file
+     */
+    public synchronized void record(String path, String contents) {
+        File file = new File(directory, path.substring(1));
+        try {
+            Files.createDirectories(file.getParentFile().toPath());
+            Files.write(file.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            System.err.println("Could not record " + path + " in the bundle.");
+        }
+    }
+
+    /**
+     * Writes the whatthreewords details of an address to the bundle. Only the coordinates are
+     * recorded, as they are all that is read from the details.
+     *
+     * @param path     the path of the details file for the address
+     * @param location the coordinates of the address
+     */
+    public void recordWords(String path, LongLat location) {
+        record(path, "{\"coordinates\":{\"lng\":" + location.longitude + ",\"lat\":" + location.latitude + "}}");
+    }
+
+    /**
+     * Starts writing a file to the bundle a piece at a time, so that a large file does not need
+     * to be held in memory. The pieces are written to a temporary file, which replaces any earlier
+     * copy only once the recording is finished, so a recording abandoned part way is discarded.
+     *
+     * @param path the path of the file, as it would be on the web server
+     * @return a Recording the pieces of the file are appended to, which must be closed
+     */
+    public Recording start(String path) {
+        return new Recording(path);
+    }
+
+    /**
+     * A file being written to the bundle a piece at a time. If it cannot be written, a message is
+     * printed once and the rest of the file is ignored.
+     */
+    public class Recording implements AutoCloseable {
+        /** the path of the file, as it would be on the web server */
+        private final String path;
+        /** the file the recording is moved to once it is finished */
+        private final File file;
+        /** the temporary file the pieces are written to */
+        private File partial;
+        /** the writer to the temporary file, or null if it could not be written */
+        private Writer writer;
+
+        /**
+         * @param path the path of the file, as it would be on the web server
+         */
+        private Recording(String path) {
+            this.path = path;
+            file = new File(directory, path.substring(1));
+            try {
+                Files.createDirectories(file.getParentFile().toPath());
+                partial = new File(file.getPath() + ".part");
+                writer = Files.newBufferedWriter(partial.toPath(), StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                fail();
+            }
+        }
+
+        /**
+         * @param contents the next piece of the file
+         */
+        public void append(String contents) {
+            if (writer == null) {
+                return;
+            }
+            try {
+                writer.write(contents);
+            } catch (IOException e) {
+                fail();
+            }
+        }
+
+        /**
+         * Finishes the recording, replacing any earlier copy of the file with it.
+         */
+        public void finish() {
+            if (writer == null) {
+                return;
+            }
+            try {
+                writer.close();
+                writer = null;
+                Files.move(partial.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                fail();
+            }
+        }
+
+        /**
+         * Discards the recording if it has not been finished.
+         */
+        @Override
+        public void close() {
+            if (writer == null) {
+                return;
+            }
+            try {
+                writer.close();
+            } catch (IOException e) {
+                // the partial file is deleted either way
+            }
+            writer = null;
+            partial.delete();
+        }
+
+        /**
+         * Prints that the file could not be recorded, and ignores the rest of it.
+         */
+        private void fail() {
+            System.err.println("Could not record " + path + " in the bundle.");
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    // the file is abandoned either way
+                }
+                writer = null;
+            }
+            if (partial != null) {
+                partial.delete();
+            }
+        }
+    }
+}
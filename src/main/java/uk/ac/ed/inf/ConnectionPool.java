@@ -0,0 +1,111 @@
+package uk.ac.ed.inf;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+
+/**
+ * A small pool of connections to the database, so that each query does not need to open
+ * a new connection. Connections are borrowed with acquire and given back with release, and
+ * up to a fixed number of idle connections are kept open for reuse until the pool is closed.
+ */
+public class ConnectionPool implements AutoCloseable {
+    /** the default number of idle connections kept open */
+    public static final int DEFAULT_MAX_IDLE = 4;
+
+    /** the string used to open connections to the database */
+    private final String jdbcString;
+    /** the number of idle connections kept open */
+    private final int maxIdle;
+    /** the connections which are open but not in use */
+    private final ArrayDeque<Connection> idle = new ArrayDeque<>();
+    /** whether the pool has been closed */
+    private boolean closed = false;
+
+    /**
+     * Constructor for ConnectionPool class keeping the default number of idle connections.
+     *
+     * @param jdbcString the string used to open connections to the database
+     */
+    public ConnectionPool(String jdbcString) {
+        this(jdbcString, DEFAULT_MAX_IDLE);
+    }
+
+    /**
+     * Constructor for ConnectionPool class.
+     *
+     * @param jdbcString the string used to open connections to the database
+     * @param maxIdle    the number of idle connections kept open
+     */
+    public ConnectionPool(String jdbcString, int maxIdle) {
+        this.jdbcString = jdbcString;
+        this.maxIdle = maxIdle;
+    }
+
+    /**
+     * Borrows a connection from the pool. An idle connection is reused if one is still open,
+     * otherwise a new connection is opened.
+     *
+     * @return a Connection to the database, which should be given back with release
+     * @throws SQLException the sql exception if the database is not available
+     */
+    public Connection acquire() throws SQLException {
+        synchronized (this) {
+            if (closed) {
+                throw new SQLException("The connection pool has been closed");
+            }
+            while (!idle.isEmpty()) {
+                Connection conn = idle.pop();
+                if (!conn.isClosed()) {
+                    return conn;
+                }
+            }
+        }
+        return DriverManager.getConnection(jdbcString);
+    }
+
+    /**
+     * Gives a connection back to the pool. It is kept open for reuse unless the pool is
+     * closed or already holds as many idle connections as it keeps, in which case it is closed.
+     * Any transaction left open on the connection is rolled back first.
+     *
+     * @param conn the connection borrowed from the pool
+     */
+    public void release(Connection conn) {
+        try {
+            if (conn.isClosed()) {
+                return;
+            }
+            if (!conn.getAutoCommit()) {
+                conn.rollback();
+                conn.setAutoCommit(true);
+            }
+            synchronized (this) {
+                if (!closed && idle.size() < maxIdle) {
+                    idle.push(conn);
+                    return;
+                }
+            }
+            conn.close();
+        } catch (SQLException e) {
+            System.err.println("Could not return a connection to the pool, it will be discarded.");
+        }
+    }
+
+    /**
+     * Closes every idle connection, and stops the pool from handing out any more.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        for (Connection conn : idle) {
+            try {
+                conn.close();
+            } catch (SQLException e) {
+                System.err.println("Could not close a connection to the database.");
+            }
+        }
+        idle.clear();
+    }
+}
@@ -1,24 +1,63 @@
 package uk.ac.ed.inf;
 
+import java.io.IOException;
 import java.sql.*;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Contains the functions required for the application to be able to access
  * the database. It gets the orders made by users and writes the orders delivered
- * and the flightpath taken after the given day of deliveries is completed.
+ * and the flightpath taken after the given day of deliveries is completed. The orders
+ * can instead be read from a recorded Bundle, in which case there is no database to write to,
+ * and the orders read from the database can be recorded into a new bundle.
  */
 public class Database {
+    /** the default number of rows sent to the database in each batch when writing */
+    public static final int DEFAULT_BATCH_SIZE = 500;
+    /** the number of orders read ahead of the order being streamed, whose addresses are looked up meanwhile */
+    public static final int STREAM_WINDOW = 16;
+    /** the query joining each of a day's orders with its items, one row for each item */
+    private static final String ORDER_QUERY =
+            "select orders.orderNo, orders.deliverTo, orderDetails.item from orders " +
+                    "left join orderDetails on orders.orderNo = orderDetails.orderNo " +
+                    "where orders.deliveryDate=(?)";
+
     /** the day to find orders for */
     private final String day;
     /** the month to find orders for */
     private final String month;
     /** the year to find orders for */
     private final String year;
-    /** the string constructed to access the database containing the machine name,
-     * port name, and database name */
-    private final String jdbcString;
+    /** the pool of connections to the database, opened with the string containing the
+     * machine name, port name, and database name, or null if the orders are read from a bundle */
+    private final ConnectionPool pool;
+    /** the bundle the orders are read from instead of the database, or null */
+    private final Bundle bundle;
+    /** the recorder the orders read are written to, or null if they are not recorded */
+    private BundleRecorder recorder;
+    /** the registry the time spent reading and writing, and the rows read and written, are recorded in */
+    private Metrics metrics = new Metrics();
+    /** the number of rows sent to the database in each batch when writing */
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    /** whether existing output tables are emptied and reused instead of being created again */
+    private boolean reuseTables = false;
+    /** the text added to the end of the names of the output tables */
+    private String tableSuffix = "";
 
     /**
      * Constructor for Database class.
@@ -29,162 +68,706 @@ public class Database {
      * @param port       specifies the port where the database is running
      */
     public Database(String inputDay, String inputMonth, String inputYear, String port) {
-        String machineName = "localhost";
+        this(inputDay, inputMonth, inputYear, new ConnectionPool(jdbcString(port)));
+    }
+
+    /**
+     * Constructor for Database class which shares an existing pool of connections.
+     *
+     * @param inputDay    specifies the day to find orders for
+     * @param inputMonth  specifies the month to find orders for
+     * @param inputYear   specifies the year to find orders for
+     * @param connections the pool of connections to the database
+     */
+    public Database(String inputDay, String inputMonth, String inputYear, ConnectionPool connections) {
         day = inputDay;
         month = inputMonth;
         year = inputYear;
-        jdbcString = "jdbc:derby://" + machineName + ":" + port + "/derbyDB";
+        pool = connections;
+        bundle = null;
     }
 
     /**
-     * Gets the orders for the requested day, which are stored on the database.
-     * It connects to the database and creates an sql query to specify the needed
-     * orders. It then finds the items associated with each order, and also assigns the
-     * delivery address, each shop to be visited, and coordinates to the instance of Order,
-     * and the cost of the order. To get the location of each shop and the cost of each
-     * item it connects to the server.
+     * Constructor for Database class which reads the orders from a recorded bundle. There is no
+     * database to write the deliveries and flightpath to.
+     *
+     * @param inputDay   specifies the day to find orders for
+     * @param inputMonth specifies the month to find orders for
+     * @param inputYear  specifies the year to find orders for
+     * @param orders     the bundle the orders are read from
+     */
+    public Database(String inputDay, String inputMonth, String inputYear, Bundle orders) {
+        day = inputDay;
+        month = inputMonth;
+        year = inputYear;
+        pool = null;
+        bundle = orders;
+    }
+
+    /**
+     * @param port specifies the port where the database is running
+     * @return the string used to access the database containing the machine name,
+     * port name, and database name
+     */
+    public static String jdbcString(String port) {
+        String machineName = "localhost";
+        return "jdbc:derby://" + machineName + ":" + port + "/derbyDB";
+    }
+
+    /**
+     * Closes the idle connections to the database once it is no longer needed.
+     */
+    public void close() {
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    /**
+     * @return true if the orders are read from a bundle, so there is no database to write to
+     */
+    public boolean isReplay() {
+        return bundle != null;
+    }
+
+    /**
+     * @param bundleRecorder the recorder the orders read from the database are written to
+     */
+    public void setRecorder(BundleRecorder bundleRecorder) {
+        recorder = bundleRecorder;
+    }
+
+    /**
+     * @param registry the registry the time spent reading and writing, and the rows read and
+     *                 written, are recorded in
+     */
+    public void setMetrics(Metrics registry) {
+        metrics = registry;
+    }
+
+    /**
+     * Gets the orders for the requested day, which are stored on the database, waiting for them
+     * to be read as described in getOrdersAsync.
      *
      * @param server the server, used to find the locations of each shop
      * @return an ArrayList containing the orders received from the database
-     * @throws SQLException the sql exception if the database is not available
+     * @throws SQLException the sql exception if the database or bundle is not available
+     * @throws CompletionException if the delivery addresses or menus cannot be read from the server
      */
     public ArrayList<Order> getOrders(WebServer server) throws SQLException {
-        HashMap<String, String> shopMap = server.getShopMap();
-        HashMap<String, Integer> itemMap = server.getItemMap();
-        ArrayList<Order> orders = new ArrayList<>();
-        Connection conn = DriverManager.getConnection(jdbcString);
-        String date = year + "-" + month + "-" + day;
-        Date orderDate = java.sql.Date.valueOf(date);
-        ArrayList<String> orderList = new ArrayList<>();
-        final String orderQuery =
-                "select * from orders where deliveryDate=(?)";
-        PreparedStatement psOrderQuery =
-                conn.prepareStatement(orderQuery);
-        psOrderQuery.setDate(1, orderDate);
-        ResultSet rs = psOrderQuery.executeQuery();
-        while (rs.next()) {
-            String order = rs.getString("orderNo");
-            orderList.add(order);
-        }
-
-        int i = 0;
-        for (String order : orderList) {
-            orders.add(new Order(order));
-            final String orderDetailsQuery =
-                    "select * from orderDetails where orderNo=(?)";
-            PreparedStatement psOrderDetailsQuery =
-                    conn.prepareStatement(orderDetailsQuery);
-            psOrderDetailsQuery.setString(1, order);
-            ResultSet rsDetails = psOrderDetailsQuery.executeQuery();
-            while (rsDetails.next()) {
-                String orderDetail = rsDetails.getString("item");
-                orders.get(i).items.add(orderDetail);
-            }
-            final String orderW3WQuery =
-                    "select * from orders where orderNo=(?)";
-            PreparedStatement psOrderW3WQuery =
-                    conn.prepareStatement(orderW3WQuery);
-            psOrderW3WQuery.setString(1, order);
-            ResultSet rsW3W = psOrderW3WQuery.executeQuery();
-            while (rsW3W.next()) {
-                String orderW3W = rsW3W.getString("deliverTo");
-                orders.get(i).setDeliveryAddress(orderW3W);
-                orders.get(i).setDeliverTo(server.parseWhatThreeWords(orderW3W));
-            }
-            orders.get(i).setShops(shopMap);
-            orders.get(i).setCost(itemMap);
-            i += 1;
-        }
-        return orders;
+        try {
+            return getOrdersAsync(server, Runnable::run).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof SQLException) {
+                throw (SQLException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Gets the orders for the requested day, which are stored on the database, without waiting
+     * for them. It borrows a connection from the pool and runs a single sql query joining each
+     * of the day's orders with its items, so every order is read in one round trip.
+     * Each row gives the order number, delivery address and one item, and the rows are
+     * gathered into an Order for each order number in the order they arrive. If the orders
+     * are read from a bundle, the rows are read from the bundle's file for the day instead.
+     * As soon as the orders have been read, the coordinates of every delivery address are looked
+     * up together, while the server may still be reading the menus. Once both are done, it assigns
+     * each shop to be visited and the cost of each order, using the server to get the shop and
+     * the cost of each item.
+     *
+     * @param server   the server, used to find the locations of each shop
+     * @param executor the executor the orders are read on
+     * @return a CompletableFuture which completes with the orders received from the database, or
+     * completes exceptionally with an SQLException if the database or bundle is not available
+     */
+    public CompletableFuture<ArrayList<Order>> getOrdersAsync(WebServer server, Executor executor) {
+        long loadStart = System.nanoTime();
+        return CompletableFuture.supplyAsync(() -> {
+            LinkedHashMap<String, Order> orderMap = new LinkedHashMap<>();
+            try {
+                if (bundle != null) {
+                    readOrders(orderMap);
+                } else {
+                    queryOrders(orderMap);
+                }
+            } catch (SQLException e) {
+                throw new CompletionException(e);
+            }
+            return new ArrayList<>(orderMap.values());
+        }, executor).thenCompose(orders -> {
+            ArrayList<String> addresses = new ArrayList<>();
+            for (Order order : orders) {
+                addresses.add(order.getDeliveryAddress());
+            }
+            CompletableFuture<Map<String, LongLat>> locations = server.resolveWhatThreeWordsAsync(addresses);
+            return locations.thenCombine(server.menusLoaded(), (deliveryPoints, menus) -> {
+                Map<String, String> shopMap = server.getShopMap();
+                Map<String, Integer> itemMap = server.getItemMap();
+                for (Order order : orders) {
+                    order.setShops(shopMap);
+                    order.setCost(itemMap);
+                    order.setDeliverTo(deliveryPoints.get(order.getDeliveryAddress()));
+                }
+                metrics.addTime(Metrics.ORDER_LOAD, System.nanoTime() - loadStart);
+                return orders;
+            });
+        });
+    }
+
+    /**
+     * Reads the rows for the day's orders from the database, recording each as it is read if they
+     * are being recorded.
+     *
+     * @param orderMap each order number and its order, which the rows are added to
+     * @throws SQLException the sql exception if the database is not available
+     */
+    private void queryOrders(LinkedHashMap<String, Order> orderMap) throws SQLException {
+        int rowCount = 0;
+        Connection conn = pool.acquire();
+        try (PreparedStatement psOrderQuery = conn.prepareStatement(ORDER_QUERY);
+             BundleRecorder.Recording rows = startRecording()) {
+            psOrderQuery.setDate(1, orderDate());
+            try (ResultSet rs = psOrderQuery.executeQuery()) {
+                while (rs.next()) {
+                    String orderNo = rs.getString("orderNo");
+                    String deliverTo = rs.getString("deliverTo");
+                    String item = rs.getString("item");
+                    addRow(orderMap, orderNo, deliverTo, item);
+                    rowCount++;
+                    recordRow(rows, orderNo, deliverTo, item);
+                }
+            }
+            if (rows != null) {
+                rows.finish();
+            }
+        } finally {
+            pool.release(conn);
+        }
+        metrics.counter(Metrics.ROWS_READ).add(rowCount);
+    }
+
+    /**
+     * @return a Recording of the rows for the day's orders, or null if they are not being recorded
+     */
+    private BundleRecorder.Recording startRecording() {
+        return recorder == null ? null : recorder.start(Bundle.ordersPath(day, month, year));
+    }
+
+    /**
+     * Records a row giving an order and one of its items, one row to each line.
+     *
+     * @param rows      the recording of the rows, or null if they are not being recorded
+     * @param orderNo   the order number
+     * @param deliverTo the whatthreewords address the order is delivered to
+     * @param item      the item, or null if the order has no items
+     */
+    private static void recordRow(BundleRecorder.Recording rows, String orderNo, String deliverTo, String item) {
+        if (rows != null) {
+            rows.append(orderNo + '\t' + deliverTo + '\t' + (item == null ? "" : item) + '\n');
+        }
+    }
+
+    /**
+     * @return the day to find orders for as an sql date
+     */
+    private Date orderDate() {
+        return java.sql.Date.valueOf(year + "-" + month + "-" + day);
+    }
+
+    /**
+     * Streams the orders for the requested day one at a time, instead of reading them all before
+     * returning. The rows are read from an open result set sorted by order number, so all the rows
+     * of an order arrive together, and each order is gathered from its rows as they are read.
+     * Up to STREAM_WINDOW orders are read ahead of the order being streamed, and the coordinates
+     * of their delivery addresses are looked up at the same time, so each order is emitted with its
+     * shops, cost and delivery point as soon as it is complete while later rows are still being
+     * read. If the orders are read from a bundle, they are streamed from the bundle's rows instead.
+     * The stream holds a connection to the database until it is closed, so it should be used in a
+     * try-with-resources statement. If the orders are being recorded, each row is recorded as it is
+     * read, and the recording is kept only if every order is streamed.
+     *
+     * @param server the server, used to find the locations of each shop
+     * @return a Stream of the orders in order of their order numbers, which must be closed
+     * @throws SQLException the sql exception if the database or bundle is not available
+     * @throws IllegalStateException if the database fails while the stream is being read
+     * @throws CompletionException if a delivery address cannot be looked up while the stream is being read
+     */
+    public Stream<Order> streamOrders(WebServer server) throws SQLException {
+        long loadStart = System.nanoTime();
+        Iterator<Order> orders;
+        Runnable close;
+        if (bundle != null) {
+            LinkedHashMap<String, Order> orderMap = new LinkedHashMap<>();
+            readOrders(orderMap);
+            ArrayList<Order> sorted = new ArrayList<>(orderMap.values());
+            sorted.sort(Comparator.comparing(order -> order.orderNo));
+            orders = sorted.iterator();
+            close = () -> { };
+        } else {
+            OrderCursor cursor = new OrderCursor();
+            orders = cursor;
+            close = cursor::close;
+        }
+        Iterator<Order> hydrated = new HydratingIterator(orders, server);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(hydrated,
+                Spliterator.ORDERED | Spliterator.NONNULL), false).onClose(() -> {
+                    close.run();
+                    metrics.addTime(Metrics.ORDER_LOAD, System.nanoTime() - loadStart);
+                });
+    }
+
+    /**
+     * Gives the orders read from another iterator once their shops, cost and delivery point have
+     * been set, reading up to STREAM_WINDOW orders ahead so that their delivery addresses are looked
+     * up together while the orders before them are used.
+     */
+    private static class HydratingIterator implements Iterator<Order> {
+        /** the orders as they are read, without their shops, cost or delivery point */
+        private final Iterator<Order> orders;
+        /** the server, used to find the shops, prices and delivery points */
+        private final WebServer server;
+        /** the orders read ahead, each completing once the addresses of its batch have been looked up */
+        private final ArrayDeque<CompletableFuture<Order>> window = new ArrayDeque<>();
+
+        /**
+         * @param orders the orders as they are read
+         * @param server the server, used to find the shops, prices and delivery points
+         */
+        HydratingIterator(Iterator<Order> orders, WebServer server) {
+            this.orders = orders;
+            this.server = server;
+        }
+
+        @Override
+        public boolean hasNext() {
+            fill();
+            return !window.isEmpty();
+        }
+
+        /**
+         * @return the next order, once its delivery address has been looked up
+         * @throws CompletionException if the delivery address cannot be looked up
+         */
+        @Override
+        public Order next() {
+            fill();
+            if (window.isEmpty()) {
+                throw new NoSuchElementException();
+            }
+            return window.poll().join();
+        }
+
+        /**
+         * Once half of the window has been used, reads orders until it is full again or there are
+         * none left. The distinct delivery addresses of the orders read are looked up together, and
+         * each order is completed with its shops, cost and delivery point once the menus have been
+         * read and its address has been found.
+         */
+        private void fill() {
+            if (window.size() > STREAM_WINDOW / 2 || !orders.hasNext()) {
+                return;
+            }
+            ArrayList<Order> batch = new ArrayList<>();
+            LinkedHashSet<String> addresses = new LinkedHashSet<>();
+            while (window.size() + batch.size() < STREAM_WINDOW && orders.hasNext()) {
+                Order order = orders.next();
+                batch.add(order);
+                addresses.add(order.getDeliveryAddress());
+            }
+            CompletableFuture<List<Order>> hydrated = server.resolveWhatThreeWordsAsync(new ArrayList<>(addresses))
+                    .thenCombine(server.menusLoaded(), (deliveryPoints, menus) -> {
+                        Map<String, String> shopMap = server.getShopMap();
+                        Map<String, Integer> itemMap = server.getItemMap();
+                        for (Order order : batch) {
+                            order.setShops(shopMap);
+                            order.setCost(itemMap);
+                            order.setDeliverTo(deliveryPoints.get(order.getDeliveryAddress()));
+                        }
+                        return batch;
+                    });
+            for (Order order : batch) {
+                window.add(hydrated.thenApply(ready -> order));
+            }
+        }
+    }
+
+    /**
+     * An open result set of the rows for the day's orders, sorted by order number, which gives
+     * each order in turn once all of its rows have been read. The connection it borrows is given
+     * back to the pool when it is closed.
+     */
+    private class OrderCursor implements Iterator<Order> {
+        /** the connection borrowed from the pool */
+        private final Connection conn;
+        /** the statement running the query */
+        private final PreparedStatement psOrderQuery;
+        /** the rows of the query */
+        private final ResultSet rs;
+        /** the recording of the rows as they are read, or null if they are not being recorded */
+        private final BundleRecorder.Recording rows;
+        /** the order whose rows are being read, or null once every row has been read */
+        private Order pending;
+        /** whether the cursor has been closed */
+        private boolean closed = false;
+
+        /**
+         * Runs the query and reads the first row.
+         *
+         * @throws SQLException the sql exception if the database is not available
+         */
+        OrderCursor() throws SQLException {
+            conn = pool.acquire();
+            rows = startRecording();
+            PreparedStatement statement = null;
+            try {
+                statement = conn.prepareStatement(ORDER_QUERY + " order by orders.orderNo");
+                statement.setDate(1, orderDate());
+                rs = statement.executeQuery();
+                psOrderQuery = statement;
+                pending = readRow(null);
+            } catch (SQLException e) {
+                if (statement != null) {
+                    statement.close();
+                }
+                if (rows != null) {
+                    rows.close();
+                }
+                pool.release(conn);
+                throw e;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return pending != null;
+        }
+
+        @Override
+        public Order next() {
+            if (pending == null) {
+                throw new NoSuchElementException();
+            }
+            Order order = pending;
+            try {
+                Order following = readRow(order);
+                while (following == order) {
+                    following = readRow(order);
+                }
+                pending = following;
+            } catch (SQLException e) {
+                close();
+                throw new IllegalStateException("Could not read the orders from the database", e);
+            }
+            if (pending == null) {
+                if (rows != null) {
+                    rows.finish();
+                }
+                close();
+            }
+            return order;
+        }
+
+        /**
+         * Reads the next row, adding its item to the current order if it belongs to it.
+         *
+         * @param current the order whose rows are being read, or null before the first row
+         * @return the current order if the row belongs to it, a new order if the row starts one,
+         * or null if there are no rows left
+         * @throws SQLException the sql exception if the database is not available
+         */
+        private Order readRow(Order current) throws SQLException {
+            if (!rs.next()) {
+                return null;
+            }
+            String orderNo = rs.getString("orderNo");
+            String deliverTo = rs.getString("deliverTo");
+            String item = rs.getString("item");
+            metrics.counter(Metrics.ROWS_READ).increment();
+            recordRow(rows, orderNo, deliverTo, item);
+            Order order = current;
+            if (current == null || !current.orderNo.equals(orderNo)) {
+                order = new Order(orderNo);
+                order.setDeliveryAddress(deliverTo);
+            }
+            if (item != null) {
+                order.items.add(item);
+            }
+            return order;
+        }
+
+        /**
+         * Closes the result set and gives the connection back to the pool, if it has not already
+         * been closed. The recording of the rows is discarded unless every row was read.
+         */
+        void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (rows != null) {
+                rows.close();
+            }
+            try {
+                rs.close();
+                psOrderQuery.close();
+            } catch (SQLException e) {
+                // the connection is given back to the pool either way
+            }
+            pool.release(conn);
+        }
+    }
+
+    /**
+     * Reads the rows for the day's orders from the bundle, one row to each line.
+     *
+     * @param orderMap each order number and its order, which the rows are added to
+     * @throws SQLException the sql exception if the bundle has no orders for the day
+     */
+    private void readOrders(LinkedHashMap<String, Order> orderMap) throws SQLException {
+        String rows;
+        try {
+            rows = bundle.read(Bundle.ordersPath(day, month, year));
+        } catch (IOException e) {
+            throw new SQLException("The bundle has no orders for " + year + "-" + month + "-" + day, e);
+        }
+        for (String row : rows.split("\n")) {
+            if (row.isEmpty()) {
+                continue;
+            }
+            String[] parts = row.split("\t", -1);
+            addRow(orderMap, parts[0], parts[1], parts[2].isEmpty() ? null : parts[2]);
+        }
+    }
+
+    /**
+     * Adds a row giving an order and one of its items, creating the Order if it is the first row for it.
+     *
+     * @param orderMap  each order number and its order
+     * @param orderNo   the order number
+     * @param deliverTo the whatthreewords address the order is delivered to
+     * @param item      the item, or null if the order has no items
+     */
+    private static void addRow(LinkedHashMap<String, Order> orderMap, String orderNo, String deliverTo,
+                               String item) {
+        Order order = orderMap.get(orderNo);
+        if (order == null) {
+            order = new Order(orderNo);
+            order.setDeliveryAddress(deliverTo);
+            orderMap.put(orderNo, order);
+        }
+        if (item != null) {
+            order.items.add(item);
+        }
+    }
+
+    /**
+     * @param size the number of rows sent to the database in each batch when writing
+     */
+    public void setBatchSize(int size) {
+        batchSize = size;
+    }
+
+    /**
+     * Sets whether existing output tables are emptied and reused, instead of being dropped
+     * and created again on every run. Reused tables must have been created by an earlier run,
+     * so that they have the expected columns.
+     *
+     * @param reuse true to empty and reuse existing tables
+     */
+    public void setReuseTables(boolean reuse) {
+        reuseTables = reuse;
+    }
+
+    /**
+     * Sets the text added to the end of the names of the deliveries and flightpath tables, so
+     * that several days can be written to the same database without overwriting each other.
+     *
+     * @param suffix the text added to the table names, which must be valid in an sql identifier
+     */
+    public void setTableSuffix(String suffix) {
+        tableSuffix = suffix.toUpperCase();
     }
 
     /**
      * Writes the orders which were successfully delivered during the day's deliveries
-     * to the database. It will check if a deliveries table already exists and drop
-     * it if it does, and then write each order with its order number, delivery address and
-     * the cost of the order in pence to the newly created deliveries table.
+     * to the database. It prepares the deliveries table, and then writes each order with its
+     * order number, delivery address and the cost of the order in pence to it. The rows are
+     * sent in batches and the whole write is made in a single transaction.
      *
      * @param orders the orders which were delivered by the drone
      * @throws SQLException the sql exception if the database is not available
      */
     public void writeOrders(ArrayList<Order> orders) throws SQLException {
-        Connection conn = DriverManager.getConnection(jdbcString);
-        Statement statement = conn.createStatement();
-
-        DatabaseMetaData databaseMetadata = conn.getMetaData();
-
-        ResultSet resultSet =
-                databaseMetadata.getTables(null, null, "DELIVERIES", null);
-        if (resultSet.next()) {
-            statement.execute("drop table deliveries");
+        long writeStart = System.nanoTime();
+        Connection conn = pool.acquire();
+        try {
+            conn.setAutoCommit(false);
+            writeOrders(conn, orders);
+            conn.commit();
+        } finally {
+            pool.release(conn);
         }
+        metrics.counter(Metrics.ROWS_WRITTEN).add(orders.size());
+        metrics.addTime(Metrics.DB_WRITE, System.nanoTime() - writeStart);
+    }
 
-        statement.execute(
-                "create table deliveries(" +
+    /**
+     * @param conn   the connection to write with
+     * @param orders the orders which were delivered by the drone
+     * @throws SQLException the sql exception if the database is not available
+     */
+    private void writeOrders(Connection conn, ArrayList<Order> orders) throws SQLException {
+        String table = "DELIVERIES" + tableSuffix;
+        prepareTable(conn, table,
+                "create table " + table + "(" +
                         "orderNo char(8)," +
                         "deliveredTo varchar(19)," +
                         "costInPence int)");
 
-        final String deliveriesStatement = "insert into deliveries values (?, ?, ?)";
-        PreparedStatement psDeliveries = conn.prepareStatement(deliveriesStatement);
-
-        for (Order order : orders) {
-            psDeliveries.setString(1, order.orderNo);
-            psDeliveries.setString(2, order.getDeliveryAddress());
-            psDeliveries.setInt(3, order.getCost());
-            psDeliveries.execute();
+        final String deliveriesStatement = "insert into " + table + " values (?, ?, ?)";
+        try (PreparedStatement psDeliveries = conn.prepareStatement(deliveriesStatement)) {
+            int batched = 0;
+            for (Order order : orders) {
+                psDeliveries.setString(1, order.orderNo);
+                psDeliveries.setString(2, order.getDeliveryAddress());
+                psDeliveries.setInt(3, order.getCost());
+                psDeliveries.addBatch();
+                batched += 1;
+                if (batched == batchSize) {
+                    psDeliveries.executeBatch();
+                    batched = 0;
+                }
+            }
+            if (batched > 0) {
+                psDeliveries.executeBatch();
+            }
         }
-
     }
 
     /**
      * Writes the flightpath the drone took while delivering the day's orders
-     * to the database. It will check if a deliveries table already exists and drop
-     * it if it does, and then write each move the drone made. This includes the starting
-     * latitude and longitude, the ending latitude and longitude, the angle the move was
-     * made at, and order number the drone was picking up or delivering when the move was
-     * made. If the drone is returning to Appleton Tower at the end of the day, the order
-     * number value will contain null instead.
-     *
-     * @param moves the moves
+     * to the database. It prepares the flightpath table, and then writes each move the drone
+     * made. This includes the starting latitude and longitude, the ending latitude and longitude,
+     * the angle the move was made at, and order number the drone was picking up or delivering when
+     * the move was made. If the drone is returning to Appleton Tower at the end of the day, the order
+     * number value will contain null instead. The rows are sent in batches and the whole write is
+     * made in a single transaction.
+     *
+     * @param flightpath the moves made by the drone
      * @throws SQLException the sql exception
      */
-    public void writeFlightpath(ArrayList<Move> moves) throws SQLException {
-        Connection conn = DriverManager.getConnection(jdbcString);
-        Statement statement = conn.createStatement();
-
-        DatabaseMetaData databaseMetadata = conn.getMetaData();
-
-        ResultSet resultSet =
-                databaseMetadata.getTables(null, null, "FLIGHTPATH", null);
-        if (resultSet.next()) {
-            statement.execute("drop table flightpath");
+    public void writeFlightpath(Flightpath flightpath) throws SQLException {
+        long writeStart = System.nanoTime();
+        Connection conn = pool.acquire();
+        try {
+            conn.setAutoCommit(false);
+            writeFlightpaths(conn, List.of(flightpath), false);
+            conn.commit();
+        } finally {
+            pool.release(conn);
         }
+        metrics.counter(Metrics.ROWS_WRITTEN).add(flightpath.size());
+        metrics.addTime(Metrics.DB_WRITE, System.nanoTime() - writeStart);
+    }
 
+    /**
+     * Writes the flightpaths of a fleet of drones to the database, in the same way as
+     * writeFlightpath, with an extra droneId column at the end of the flightpath table giving the
+     * drone which made each move.
+     *
+     * @param flightpaths the moves made by each drone, indexed by drone id
+     * @throws SQLException the sql exception
+     */
+    public void writeFlightpaths(List<Flightpath> flightpaths) throws SQLException {
+        long writeStart = System.nanoTime();
+        Connection conn = pool.acquire();
+        try {
+            conn.setAutoCommit(false);
+            writeFlightpaths(conn, flightpaths, true);
+            conn.commit();
+        } finally {
+            pool.release(conn);
+        }
+        for (Flightpath flightpath : flightpaths) {
+            metrics.counter(Metrics.ROWS_WRITTEN).add(flightpath.size());
+        }
+        metrics.addTime(Metrics.DB_WRITE, System.nanoTime() - writeStart);
+    }
 
-        statement.execute(
-                "create table flightpath(" +
+    /**
+     * @param conn        the connection to write with
+     * @param flightpaths the moves made by each drone, indexed by drone id
+     * @param withDroneId whether the table has a droneId column
+     * @throws SQLException the sql exception
+     */
+    private void writeFlightpaths(Connection conn, List<Flightpath> flightpaths, boolean withDroneId)
+            throws SQLException {
+        String table = "FLIGHTPATH" + tableSuffix;
+        prepareTable(conn, table,
+                "create table " + table + "(" +
                         "orderNo char(8)," +
                         "fromLongitude double," +
                         "fromLatitude double," +
                         "angle int," +
                         "toLongitude double," +
-                        "toLatitude double)");
+                        "toLatitude double" +
+                        (withDroneId ? ", droneId int)" : ")"));
 
-
-        final String flightpathStatement = "insert into flightpath values (?, ?, ?, ?, ?, ?)";
-        PreparedStatement psFlightpath = conn.prepareStatement(flightpathStatement);
-
-        for (Move move: moves) {
-            psFlightpath.setString(1, move.orderNo);
-            psFlightpath.setDouble(2, move.startPoint.longitude);
-            psFlightpath.setDouble(3, move.startPoint.latitude);
-            psFlightpath.setInt(4,move.angle);
-            psFlightpath.setDouble(5,move.endPoint.longitude);
-            psFlightpath.setDouble(6,move.endPoint.latitude);
-            psFlightpath.execute();
+        final String flightpathStatement = "insert into " + table
+                + (withDroneId ? " values (?, ?, ?, ?, ?, ?, ?)" : " values (?, ?, ?, ?, ?, ?)");
+        try (PreparedStatement psFlightpath = conn.prepareStatement(flightpathStatement)) {
+            int batched = 0;
+            for (int drone = 0; drone < flightpaths.size(); drone++) {
+                Flightpath flightpath = flightpaths.get(drone);
+                for (int move = 0; move < flightpath.size(); move++) {
+                    psFlightpath.setString(1, flightpath.getOrderNo(move));
+                    psFlightpath.setDouble(2, flightpath.getLongitude(move));
+                    psFlightpath.setDouble(3, flightpath.getLatitude(move));
+                    psFlightpath.setInt(4, flightpath.getAngle(move));
+                    psFlightpath.setDouble(5, flightpath.getLongitude(move + 1));
+                    psFlightpath.setDouble(6, flightpath.getLatitude(move + 1));
+                    if (withDroneId) {
+                        psFlightpath.setInt(7, drone);
+                    }
+                    psFlightpath.addBatch();
+                    batched += 1;
+                    if (batched == batchSize) {
+                        psFlightpath.executeBatch();
+                        batched = 0;
+                    }
+                }
+            }
+            if (batched > 0) {
+                psFlightpath.executeBatch();
+            }
         }
+    }
 
-
+    /**
+     * Makes sure an empty output table exists. If the table already exists it is emptied when
+     * tables are being reused, and otherwise it is dropped and created again.
+     *
+     * @param conn        the connection to write with
+     * @param table       the name of the table, in upper case as stored by the database
+     * @param createTable the sql statement which creates the table
+     * @throws SQLException the sql exception if the database is not available
+     */
+    private void prepareTable(Connection conn, String table, String createTable) throws SQLException {
+        boolean exists;
+        try (ResultSet resultSet = conn.getMetaData().getTables(null, null, table, null)) {
+            exists = resultSet.next();
+        }
+        try (Statement statement = conn.createStatement()) {
+            if (exists && reuseTables) {
+                statement.execute("truncate table " + table);
+                return;
+            }
+            if (exists) {
+                statement.execute("drop table " + table);
+            }
+            statement.execute(createTable);
+        }
     }
 }
@@ -0,0 +1,258 @@
+package uk.ac.ed.inf;
+
+import com.mapbox.geojson.Point;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Plans a day of deliveries for a fleet of drones, each starting at Appleton Tower with its own
+ * budget of moves. The orders are partitioned between the drones by clustering them with k-means,
+ * using the delivery point of each order together with the centre of the shops it is collected
+ * from, so each drone serves one part of the area. The path of each drone is then planned by its
+ * own Path, with every drone planned at the same time on its own thread.
+ */
+public class Fleet {
+    /** the number of rounds of k-means run when partitioning the orders */
+    private static final int CLUSTER_ROUNDS = 50;
+
+    /** the orders assigned to each drone, indexed by drone id */
+    private final List<ArrayList<Order>> assignments = new ArrayList<>();
+    /** the path planned for each drone, indexed by drone id */
+    private final List<Path> paths = new ArrayList<>();
+
+    /**
+     * Constructor for Fleet class. The orders are partitioned between the drones, and a Path is
+     * created for each drone.
+     *
+     * @param orders  the list of orders obtained from the database
+     * @param server  an instance of WebServer, used to get the building locations
+     * @param drones  the number of drones in the fleet
+     * @param metrics the registry the timings and counters of every drone are recorded in
+     */
+    public Fleet(ArrayList<Order> orders, WebServer server, int drones, Metrics metrics) {
+        this(orders, server.getNoFlyPolygons(), server.getLandmarks(), server.getLocationMap(), drones, metrics);
+    }
+
+    /**
+     * Constructor for Fleet class given the buildings directly instead of a WebServer.
+     *
+     * @param orders          the list of orders obtained from the database
+     * @param noFlyPolygons   the points outlining each polygon of the no-fly zone
+     * @param landmarkList    the locations of the landmarks
+     * @param shopLocations   each of the shops and the coordinates of their locations
+     * @param drones          the number of drones in the fleet
+     * @param metrics         the registry the timings and counters of every drone are recorded in
+     */
+    public Fleet(ArrayList<Order> orders, List<List<Point>> noFlyPolygons, List<LongLat> landmarkList,
+                 Map<String, LongLat> shopLocations, int drones, Metrics metrics) {
+        assignments.addAll(partition(orders, shopLocations, drones));
+        for (ArrayList<Order> assigned : assignments) {
+            Path path = new Path(assigned, noFlyPolygons, new ArrayList<>(landmarkList), shopLocations);
+            path.setMetrics(metrics);
+            path.setPrintSummary(false);
+            paths.add(path);
+        }
+    }
+
+    /**
+     * Partitions the orders between the drones with k-means. Each order is placed at the point
+     * halfway between its delivery point and the centre of its shops, the first centres are
+     * chosen with k-means++ from a fixed seed so that the same orders are always partitioned in
+     * the same way, and orders are then moved to their closest centre until none move. Each
+     * order stays in the position it had in the list of orders.
+     *
+     * @param orders        the orders to partition
+     * @param shopLocations each of the shops and the coordinates of their locations
+     * @param drones        the number of drones in the fleet
+     * @return a List of the orders assigned to each drone, some of which may be empty
+     */
+    static List<ArrayList<Order>> partition(List<Order> orders, Map<String, LongLat> shopLocations, int drones) {
+        int count = orders.size();
+        double[] lon = new double[count];
+        double[] lat = new double[count];
+        for (int i = 0; i < count; i++) {
+            Order order = orders.get(i);
+            double shopLon = 0;
+            double shopLat = 0;
+            for (String shop : order.getShopList()) {
+                shopLon += shopLocations.get(shop).longitude;
+                shopLat += shopLocations.get(shop).latitude;
+            }
+            int shops = Math.max(1, order.getShopList().size());
+            lon[i] = (order.getDeliverTo().longitude + shopLon / shops) / 2;
+            lat[i] = (order.getDeliverTo().latitude + shopLat / shops) / 2;
+        }
+
+        int clusters = Math.min(drones, count);
+        double[] centreLon = new double[clusters];
+        double[] centreLat = new double[clusters];
+        Random random = new Random(0);
+        double[] nearest = new double[count];
+        Arrays.fill(nearest, Double.POSITIVE_INFINITY);
+        for (int c = 0; c < clusters; c++) {
+            int chosen = 0;
+            if (c == 0) {
+                chosen = random.nextInt(count);
+            } else {
+                double total = 0;
+                for (double distance : nearest) {
+                    total += distance;
+                }
+                double target = random.nextDouble() * total;
+                for (chosen = 0; chosen < count - 1 && target >= nearest[chosen]; chosen++) {
+                    target -= nearest[chosen];
+                }
+            }
+            centreLon[c] = lon[chosen];
+            centreLat[c] = lat[chosen];
+            for (int i = 0; i < count; i++) {
+                nearest[i] = Math.min(nearest[i], squaredDistance(lon[i], lat[i], centreLon[c], centreLat[c]));
+            }
+        }
+
+        int[] cluster = new int[count];
+        for (int round = 0; round < CLUSTER_ROUNDS; round++) {
+            boolean moved = false;
+            for (int i = 0; i < count; i++) {
+                int best = 0;
+                for (int c = 1; c < clusters; c++) {
+                    if (squaredDistance(lon[i], lat[i], centreLon[c], centreLat[c])
+                            < squaredDistance(lon[i], lat[i], centreLon[best], centreLat[best])) {
+                        best = c;
+                    }
+                }
+                moved |= round == 0 || cluster[i] != best;
+                cluster[i] = best;
+            }
+            if (!moved) {
+                break;
+            }
+            double[] sumLon = new double[clusters];
+            double[] sumLat = new double[clusters];
+            int[] sizes = new int[clusters];
+            for (int i = 0; i < count; i++) {
+                sumLon[cluster[i]] += lon[i];
+                sumLat[cluster[i]] += lat[i];
+                sizes[cluster[i]]++;
+            }
+            for (int c = 0; c < clusters; c++) {
+                if (sizes[c] > 0) {
+                    centreLon[c] = sumLon[c] / sizes[c];
+                    centreLat[c] = sumLat[c] / sizes[c];
+                }
+            }
+        }
+
+        List<ArrayList<Order>> partitions = new ArrayList<>();
+        for (int d = 0; d < drones; d++) {
+            partitions.add(new ArrayList<>());
+        }
+        for (int i = 0; i < count; i++) {
+            partitions.get(cluster[i]).add(orders.get(i));
+        }
+        return partitions;
+    }
+
+    /**
+     * @param lon1 the longitude of the first point
+     * @param lat1 the latitude of the first point
+     * @param lon2 the longitude of the second point
+     * @param lat2 the latitude of the second point
+     * @return the square of the distance between the points
+     */
+    private static double squaredDistance(double lon1, double lat1, double lon2, double lat2) {
+        return (lon1 - lon2) * (lon1 - lon2) + (lat1 - lat2) * (lat1 - lat2);
+    }
+
+    /**
+     * Sets whether the orders of each drone are sequenced by the order sequencer.
+     *
+     * @param optimise true to use the order sequencer
+     */
+    public void setOptimiseSequence(boolean optimise) {
+        for (Path path : paths) {
+            path.setOptimiseSequence(optimise);
+        }
+    }
+
+    /**
+     * Sets the cache of legs shared by every drone, as described in Path.
+     *
+     * @param cache the cache of legs, or null to plan every leg
+     */
+    public void setRouteCache(RouteCache cache) {
+        for (Path path : paths) {
+            path.setRouteCache(cache);
+        }
+    }
+
+    /**
+     * Sets how many moves ahead each drone looks when choosing a move, as described in Path.
+     *
+     * @param depth the number of moves to look ahead, at least 1
+     */
+    public void setLookaheadDepth(int depth) {
+        for (Path path : paths) {
+            path.setLookaheadDepth(depth);
+        }
+    }
+
+    /**
+     * Generates the path of every drone at the same time, each on its own thread. A drone which
+     * has no orders stays at Appleton Tower. Once every drone is finished, the summary of each
+     * drone is printed in order of drone id.
+     *
+     * @return an ArrayList containing all the orders which were successfully delivered by any drone
+     */
+    public ArrayList<Order> generatePaths() {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, paths.size()));
+        try {
+            List<Future<ArrayList<Order>>> results = new ArrayList<>();
+            for (Path path : paths) {
+                results.add(executor.submit(path::generatePath));
+            }
+            ArrayList<Order> delivered = new ArrayList<>();
+            for (Future<ArrayList<Order>> result : results) {
+                delivered.addAll(result.get());
+            }
+            for (int drone = 0; drone < paths.size(); drone++) {
+                System.out.println("drone " + drone + ":");
+                System.out.println(paths.get(drone).getSummary());
+            }
+            return delivered;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while planning the fleet", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Planning a drone failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @return a List of the flightpath of each drone, indexed by drone id
+     */
+    public List<Flightpath> getFlightpaths() {
+        List<Flightpath> flightpaths = new ArrayList<>();
+        for (Path path : paths) {
+            flightpaths.add(path.getFlightpath());
+        }
+        return flightpaths;
+    }
+
+    /**
+     * @return a List of the orders assigned to each drone, indexed by drone id
+     */
+    public List<ArrayList<Order>> getAssignments() {
+        return assignments;
+    }
+}
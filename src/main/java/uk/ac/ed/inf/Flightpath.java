@@ -0,0 +1,161 @@
+package uk.ac.ed.inf;
+
+import com.mapbox.geojson.Point;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * The flightpath of the drone, stored compactly as parallel arrays instead of an object per move.
+ * As every move starts where the previous move ended, each point on the path is stored once, so
+ * move i goes from point i to point i + 1. The angle of each move is stored as an int, and the order
+ * number of each move as an index into a table of the order numbers seen. Views of the moves and of
+ * the points are available for code which needs Move or Point objects, and create them only when read.
+ */
+public class Flightpath {
+    /** the number of moves space is made for when the flightpath is created */
+    private static final int INITIAL_CAPACITY = 256;
+
+    /** the longitude of each point on the path */
+    private double[] longitudes = new double[INITIAL_CAPACITY + 1];
+    /** the latitude of each point on the path */
+    private double[] latitudes = new double[INITIAL_CAPACITY + 1];
+    /** the angle of each move */
+    private int[] angles = new int[INITIAL_CAPACITY];
+    /** the index in the table of order numbers of the order each move was made for */
+    private int[] orderIndices = new int[INITIAL_CAPACITY];
+    /** the table of order numbers, which may contain null for moves made returning at the end */
+    private final List<String> orderNumbers = new ArrayList<>();
+    /** the index of each order number in the table */
+    private final HashMap<String, Integer> orderIndexMap = new HashMap<>();
+    /** the number of moves in the flightpath */
+    private int size = 0;
+
+    /**
+     * Adds a move to the end of the flightpath. The first move added sets the start of the path,
+     * and every later move must start where the previous move ended.
+     *
+     * @param orderNo   the order number of the order the move was made for, or null
+     * @param firstLoc  the location where the drone began the move
+     * @param angle     the angle the move was made at
+     * @param secondLoc the location where the drone ended the move
+     * @throws IllegalArgumentException if the move does not start where the previous move ended
+     */
+    public void add(String orderNo, LongLat firstLoc, int angle, LongLat secondLoc) {
+        if (size == 0) {
+            longitudes[0] = firstLoc.longitude;
+            latitudes[0] = firstLoc.latitude;
+        } else if (longitudes[size] != firstLoc.longitude || latitudes[size] != firstLoc.latitude) {
+            throw new IllegalArgumentException("A move must start where the previous move ended");
+        }
+        if (size == angles.length) {
+            int capacity = size * 2;
+            longitudes = Arrays.copyOf(longitudes, capacity + 1);
+            latitudes = Arrays.copyOf(latitudes, capacity + 1);
+            angles = Arrays.copyOf(angles, capacity);
+            orderIndices = Arrays.copyOf(orderIndices, capacity);
+        }
+        Integer orderIndex = orderIndexMap.get(orderNo);
+        if (orderIndex == null) {
+            orderIndex = orderNumbers.size();
+            orderNumbers.add(orderNo);
+            orderIndexMap.put(orderNo, orderIndex);
+        }
+        angles[size] = angle;
+        orderIndices[size] = orderIndex;
+        longitudes[size + 1] = secondLoc.longitude;
+        latitudes[size + 1] = secondLoc.latitude;
+        size++;
+    }
+
+    /**
+     * @return the number of moves in the flightpath
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return true if no moves have been made
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @param move the index of a move
+     * @return the order number of the order the move was made for, or null if the drone was returning
+     */
+    public String getOrderNo(int move) {
+        return orderNumbers.get(orderIndices[move]);
+    }
+
+    /**
+     * @param move the index of a move
+     * @return the angle the move was made at
+     */
+    public int getAngle(int move) {
+        return angles[move];
+    }
+
+    /**
+     * @param point the index of a point on the path, from 0 to the number of moves
+     * @return the longitude of the point
+     */
+    public double getLongitude(int point) {
+        return longitudes[point];
+    }
+
+    /**
+     * @param point the index of a point on the path, from 0 to the number of moves
+     * @return the latitude of the point
+     */
+    public double getLatitude(int point) {
+        return latitudes[point];
+    }
+
+    /**
+     * @return a List of the moves in the flightpath, each Move being created when it is read
+     */
+    public List<Move> asMoves() {
+        return new AbstractList<>() {
+            @Override
+            public Move get(int index) {
+                if (index < 0 || index >= size) {
+                    throw new IndexOutOfBoundsException(index);
+                }
+                return new Move(getOrderNo(index), new LongLat(longitudes[index], latitudes[index]),
+                        angles[index], new LongLat(longitudes[index + 1], latitudes[index + 1]));
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    /**
+     * @return a List of the points on the path, each Point being created when it is read,
+     * empty if no moves have been made
+     */
+    public List<Point> asPoints() {
+        return new AbstractList<>() {
+            @Override
+            public Point get(int index) {
+                if (index < 0 || index >= size()) {
+                    throw new IndexOutOfBoundsException(index);
+                }
+                return Point.fromLngLat(longitudes[index], latitudes[index]);
+            }
+
+            @Override
+            public int size() {
+                return size == 0 ? 0 : size + 1;
+            }
+        };
+    }
+}
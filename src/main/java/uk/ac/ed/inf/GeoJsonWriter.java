@@ -0,0 +1,260 @@
+package uk.ac.ed.inf;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes the flightpath of the drone to a GeoJSON file as a single LineString feature, streaming
+ * the coordinates straight from the flightpath into a fixed size buffer which is emptied into the
+ * file whenever it fills. Nothing the size of the whole flightpath is built in memory, each point of the
+ * path is written once, the number of decimal places written for each coordinate can be chosen, and
+ * the file can be compressed with gzip as it is written. The flightpaths of a fleet of drones can
+ * be written to the same file, as one feature for each drone.
+ */
+public class GeoJsonWriter {
+    /** the default number of decimal places written for each coordinate, matching the Mapbox library */
+    public static final int DEFAULT_PRECISION = 7;
+    /** the default size of the buffer the file is written through, in bytes */
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    /** the number of decimal places written for each coordinate */
+    private final int precision;
+    /** whether the file is compressed with gzip */
+    private final boolean gzip;
+    /** the size of the buffer the file is written through, in bytes */
+    private final int bufferSize;
+    /** ten to the power of the precision, used to round each coordinate */
+    private final long scale;
+
+    /**
+     * Constructor for GeoJsonWriter class writing an uncompressed file with the default precision.
+     */
+    public GeoJsonWriter() {
+        this(DEFAULT_PRECISION, false, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Constructor for GeoJsonWriter class.
+     *
+     * @param precision  the number of decimal places written for each coordinate, at most 15
+     * @param gzip       whether the file is compressed with gzip
+     * @param bufferSize the size of the buffer the file is written through, in bytes
+     */
+    public GeoJsonWriter(int precision, boolean gzip, int bufferSize) {
+        this.precision = precision;
+        this.gzip = gzip;
+        this.bufferSize = Math.max(bufferSize, 64);
+        long power = 1;
+        for (int i = 0; i < precision; i++) {
+            power *= 10;
+        }
+        scale = power;
+    }
+
+    /**
+     * @param day   the day of deliveries
+     * @param month the month of deliveries
+     * @param year  the year of deliveries
+     * @return the file the flightpath for the day is written to, ending in .gz if it is compressed
+     */
+    public File fileFor(String day, String month, String year) {
+        return new File("drone-" + day + "-" + month + "-" + year + ".geojson" + (gzip ? ".gz" : ""));
+    }
+
+    /**
+     * Writes the flightpath to the given file, replacing it if it exists. Each point on the
+     * path is written once, from the start of the first move to the end of the last.
+     *
+     * @param file       the file to write to
+     * @param flightpath the moves made by the drone
+     * @throws IOException if the file cannot be written
+     */
+    public void write(File file, Flightpath flightpath) throws IOException {
+        try (WritableByteChannel channel = open(file)) {
+            ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
+            put(channel, buffer, "{\"type\":\"FeatureCollection\",\"features\":[");
+            putFeature(channel, buffer, flightpath, "{}");
+            put(channel, buffer, "]}");
+            drain(channel, buffer);
+        }
+    }
+
+    /**
+     * Writes the flightpaths of a fleet of drones to the given file, replacing it if it exists.
+     * Each drone's flightpath is written as its own feature, with the drone id in its properties.
+     * A drone which made no moves has no line to draw, so it is left out.
+     *
+     * @param file        the file to write to
+     * @param flightpaths the moves made by each drone, indexed by drone id
+     * @throws IOException if the file cannot be written
+     */
+    public void write(File file, List<Flightpath> flightpaths) throws IOException {
+        try (WritableByteChannel channel = open(file)) {
+            ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
+            put(channel, buffer, "{\"type\":\"FeatureCollection\",\"features\":[");
+            boolean first = true;
+            for (int drone = 0; drone < flightpaths.size(); drone++) {
+                if (flightpaths.get(drone).isEmpty()) {
+                    continue;
+                }
+                if (!first) {
+                    put(channel, buffer, ",");
+                }
+                first = false;
+                putFeature(channel, buffer, flightpaths.get(drone), "{\"droneId\":" + drone + "}");
+            }
+            put(channel, buffer, "]}");
+            drain(channel, buffer);
+        }
+    }
+
+    /**
+     * Writes a flightpath as a LineString feature.
+     *
+     * @param channel    the channel being written to
+     * @param buffer     the buffer being filled
+     * @param flightpath the moves made by the drone
+     * @param properties the properties of the feature, as a JSON object
+     * @throws IOException if the file cannot be written
+     */
+    private void putFeature(WritableByteChannel channel, ByteBuffer buffer, Flightpath flightpath,
+                            String properties) throws IOException {
+        put(channel, buffer, "{\"type\":\"Feature\",\"geometry\":{\"type\":\"LineString\",\"coordinates\":[");
+        if (!flightpath.isEmpty()) {
+            for (int point = 0; point <= flightpath.size(); point++) {
+                putPoint(channel, buffer, flightpath.getLongitude(point), flightpath.getLatitude(point),
+                        point > 0);
+            }
+        }
+        put(channel, buffer, "]},\"properties\":" + properties + "}");
+    }
+
+    /**
+     * @param file the file to write to
+     * @return a channel writing to the file, through gzip if it is compressed
+     * @throws IOException if the file cannot be opened
+     */
+    private WritableByteChannel open(File file) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        if (!gzip) {
+            return channel;
+        }
+        return Channels.newChannel(new GZIPOutputStream(Channels.newOutputStream(channel), bufferSize));
+    }
+
+    /**
+     * Writes a point as a pair of coordinates.
+     *
+     * @param channel   the channel being written to
+     * @param buffer    the buffer being filled
+     * @param lon       the longitude of the point
+     * @param lat       the latitude of the point
+     * @param separated whether a comma is written before the point
+     * @throws IOException if the file cannot be written
+     */
+    private void putPoint(WritableByteChannel channel, ByteBuffer buffer, double lon, double lat,
+                          boolean separated) throws IOException {
+        // a coordinate takes at most 1 sign, 19 whole digits, 1 point and 15 decimal places
+        if (buffer.remaining() < 80) {
+            drain(channel, buffer);
+        }
+        if (separated) {
+            buffer.put((byte) ',');
+        }
+        buffer.put((byte) '[');
+        putCoordinate(buffer, lon);
+        buffer.put((byte) ',');
+        putCoordinate(buffer, lat);
+        buffer.put((byte) ']');
+    }
+
+    /**
+     * Writes a coordinate rounded to the precision, without trailing zeros, straight into the
+     * buffer so that no String is created for it.
+     *
+     * @param buffer the buffer being filled
+     * @param value  the coordinate
+     */
+    private void putCoordinate(ByteBuffer buffer, double value) {
+        long scaled = Math.round(Math.abs(value) * scale);
+        if (value < 0 && scaled != 0) {
+            buffer.put((byte) '-');
+        }
+        putDigits(buffer, scaled / scale, 1);
+        long fraction = scaled % scale;
+        if (fraction == 0) {
+            return;
+        }
+        int places = precision;
+        while (fraction % 10 == 0) {
+            fraction /= 10;
+            places--;
+        }
+        buffer.put((byte) '.');
+        putDigits(buffer, fraction, places);
+    }
+
+    /**
+     * @param buffer    the buffer being filled
+     * @param number    a number which is not negative
+     * @param minDigits the fewest digits to write, padding with leading zeros
+     */
+    private static void putDigits(ByteBuffer buffer, long number, int minDigits) {
+        int digits = 1;
+        for (long rest = number / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        for (int i = digits; i < minDigits; i++) {
+            buffer.put((byte) '0');
+        }
+        long divisor = 1;
+        for (int i = 1; i < digits; i++) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            buffer.put((byte) ('0' + (number / divisor) % 10));
+        }
+    }
+
+    /**
+     * @param channel the channel being written to
+     * @param buffer  the buffer being filled
+     * @param text    the text to write
+     * @throws IOException if the file cannot be written
+     */
+    private void put(WritableByteChannel channel, ByteBuffer buffer, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        if (buffer.remaining() < bytes.length) {
+            drain(channel, buffer);
+        }
+        if (bytes.length > buffer.capacity()) {
+            channel.write(ByteBuffer.wrap(bytes));
+            return;
+        }
+        buffer.put(bytes);
+    }
+
+    /**
+     * Writes everything in the buffer to the channel and empties the buffer.
+     *
+     * @param channel the channel being written to
+     * @param buffer  the buffer being emptied
+     * @throws IOException if the file cannot be written
+     */
+    private static void drain(WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,14 @@
+package uk.ac.ed.inf;
+
+/**
+ * Gives the cost of a single leg of the drone's journey, measured in moves, so that
+ * order selection can compare candidate orders without flying each leg.
+ */
+public interface LegCost {
+    /**
+     * @param from the point the leg starts at
+     * @param to   the point the leg ends at
+     * @return the number of moves needed to fly from the first point to the second
+     */
+    double moves(LongLat from, LongLat to);
+}
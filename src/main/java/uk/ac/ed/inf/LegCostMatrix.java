@@ -0,0 +1,187 @@
+package uk.ac.ed.inf;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * A table of the number of moves the drone actually needs to fly between each pair of the points
+ * relevant to a day's deliveries: the shops, the delivery points and Appleton Tower. Every leg is
+ * planned with the leg planner, in parallel, when the table is built, so any order selection can
+ * then look up the real cost of a leg, including detours around the no-fly zone, in constant time.
+ * A table can be extended with new delivery points, keeping every leg already planned.
+ */
+public class LegCostMatrix implements LegCost {
+    /** the points in the table */
+    private final List<LongLat> points = new ArrayList<>();
+    /** the index of each point in the table */
+    private final HashMap<LongLat, Integer> indices = new HashMap<>();
+    /** the moves needed to fly from each point to each other point */
+    private final double[][] moves;
+    /** the cost used for legs the table does not contain */
+    private final LegCost fallback;
+    /** the index of the first delivery point, after the base and the shops */
+    private final int firstDelivery;
+
+    /**
+     * Constructor for LegCostMatrix class which plans the legs on the common fork-join pool.
+     *
+     * @param legPlanner the planner used to find the moves for each leg
+     * @param shops      the locations of the shops
+     * @param deliveries the delivery points of the day's orders
+     * @param base       the point the drone starts from and returns to
+     * @param fallback   the cost used for legs which could not be planned or are not in the table
+     */
+    public LegCostMatrix(LegPlanner legPlanner, List<LongLat> shops, List<LongLat> deliveries, LongLat base,
+                         LegCost fallback) {
+        this(legPlanner, shops, deliveries, base, fallback, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Constructor for LegCostMatrix class. Each distinct point is given an index, and the leg between
+     * every pair of points is planned in parallel on the given pool.
+     *
+     * @param legPlanner the planner used to find the moves for each leg
+     * @param shops      the locations of the shops
+     * @param deliveries the delivery points of the day's orders
+     * @param base       the point the drone starts from and returns to
+     * @param fallback   the cost used for legs which could not be planned or are not in the table
+     * @param pool       the pool the legs are planned on
+     */
+    public LegCostMatrix(LegPlanner legPlanner, List<LongLat> shops, List<LongLat> deliveries, LongLat base,
+                         LegCost fallback, ForkJoinPool pool) {
+        this.fallback = fallback;
+        add(base);
+        for (LongLat shop : shops) {
+            add(shop);
+        }
+        firstDelivery = points.size();
+        for (LongLat delivery : deliveries) {
+            add(delivery);
+        }
+
+        int size = points.size();
+        moves = new double[size][size];
+        pool.submit(() -> IntStream.range(0, size * size).parallel().forEach(pair ->
+                moves[pair / size][pair % size] = planMoves(legPlanner, pair / size, pair % size))).join();
+    }
+
+    /**
+     * Constructor for LegCostMatrix class which extends an existing table with more delivery points.
+     * Every leg in the existing table is copied, and only the legs to and from the new points are
+     * planned, in parallel on the given pool.
+     *
+     * @param previous   the table being extended
+     * @param legPlanner the planner used to find the moves for each new leg
+     * @param deliveries the new delivery points, any of which already in the table are ignored
+     * @param pool       the pool the new legs are planned on
+     */
+    public LegCostMatrix(LegCostMatrix previous, LegPlanner legPlanner, List<LongLat> deliveries,
+                         ForkJoinPool pool) {
+        fallback = previous.fallback;
+        firstDelivery = previous.firstDelivery;
+        points.addAll(previous.points);
+        indices.putAll(previous.indices);
+        int oldSize = points.size();
+        for (LongLat delivery : deliveries) {
+            add(delivery);
+        }
+
+        int size = points.size();
+        moves = new double[size][size];
+        for (int from = 0; from < oldSize; from++) {
+            System.arraycopy(previous.moves[from], 0, moves[from], 0, oldSize);
+        }
+        int added = size - oldSize;
+        // the new legs are the new rows, and the new columns of the old rows
+        pool.submit(() -> IntStream.range(0, added * size + oldSize * added).parallel().forEach(pair -> {
+            int from;
+            int to;
+            if (pair < added * size) {
+                from = oldSize + pair / size;
+                to = pair % size;
+            } else {
+                from = (pair - added * size) / added;
+                to = oldSize + (pair - added * size) % added;
+            }
+            moves[from][to] = planMoves(legPlanner, from, to);
+        })).join();
+    }
+
+    /**
+     * Finds the moves needed for a leg of the table. The drone never flies directly from one
+     * delivery point to another, so those legs are left to the fallback cost, as are legs which
+     * could not be planned.
+     *
+     * @param legPlanner the planner used to find the moves for the leg
+     * @param from       the index of the point the leg starts at
+     * @param to         the index of the point the leg ends at
+     * @return the number of moves needed to fly between the points
+     */
+    private double planMoves(LegPlanner legPlanner, int from, int to) {
+        if (from == to) {
+            return 0;
+        }
+        if (from >= firstDelivery && to >= firstDelivery) {
+            return fallback.moves(points.get(from), points.get(to));
+        }
+        int[] leg = legPlanner.plan(points.get(from), points.get(to));
+        return leg == null ? fallback.moves(points.get(from), points.get(to)) : leg.length;
+    }
+
+    /**
+     * @param point a point to add to the table, ignored if a point with the same coordinates
+     *              is already in it
+     */
+    private void add(LongLat point) {
+        if (!indices.containsKey(point)) {
+            indices.put(point, points.size());
+            points.add(point);
+        }
+    }
+
+    /**
+     * @param point a point
+     * @return the index of the point in the table, or -1 if it is not in the table
+     */
+    public int indexOf(LongLat point) {
+        Integer index = indices.get(point);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * @return a List of the points in the table, in the order of their indices
+     */
+    public List<LongLat> getPoints() {
+        return new ArrayList<>(points);
+    }
+
+    /**
+     * @param from the index of the point the leg starts at
+     * @param to   the index of the point the leg ends at
+     * @return the number of moves needed to fly between the points
+     */
+    public double moves(int from, int to) {
+        return moves[from][to];
+    }
+
+    /**
+     * Looks up the number of moves needed to fly between two points. If either point is not in
+     * the table the fallback cost is used instead.
+     *
+     * @param from the point the leg starts at
+     * @param to   the point the leg ends at
+     * @return the number of moves needed to fly between the points
+     */
+    @Override
+    public double moves(LongLat from, LongLat to) {
+        int fromIndex = indexOf(from);
+        int toIndex = indexOf(to);
+        if (fromIndex == -1 || toIndex == -1) {
+            return fallback.moves(from, to);
+        }
+        return moves[fromIndex][toIndex];
+    }
+}
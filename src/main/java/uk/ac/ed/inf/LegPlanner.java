@@ -0,0 +1,239 @@
+package uk.ac.ed.inf;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.PriorityQueue;
+
+/**
+ * Plans a single leg of the drone's journey using A* search over the moves the drone can make.
+ * Every state is a position reached by a sequence of moves at multiples of 10 degrees, and the
+ * search finds the fewest moves which bring the drone close to the goal without entering the
+ * no-fly zone or leaving the confinement area. Positions are grouped into small cells so that
+ * nearly identical positions are only explored once, and the search gives up after a fixed number
+ * of expansions so that every leg is planned in bounded time.
+ */
+public class LegPlanner {
+    /** the default weight of the estimate of remaining moves, which finds the leg with the fewest moves */
+    public static final double DEFAULT_WEIGHT = 1;
+    /** a weight of the estimate of remaining moves which trades a slightly longer leg for a faster search */
+    public static final double FAST_WEIGHT = 1.2;
+    /** the default number of states the search may expand before giving up */
+    public static final int DEFAULT_MAX_EXPANSIONS = 100000;
+    /** the default width and height of the cells positions are grouped into, in degrees */
+    public static final double DEFAULT_CELL_SIZE = LongLat.MOVE_LENGTH / 5;
+
+    /** the spatial index over the no-fly zone, used to check moves */
+    private final NoFlyIndex noFlyIndex;
+    /** the visibility graph used to skip goals which cannot be reached, or null to search for every goal */
+    private final VisibilityGraph visibilityGraph;
+    /** how strongly the estimate of remaining moves is weighted, 1 gives the optimal leg */
+    private final double weight;
+    /** the number of states the search may expand before giving up */
+    private final int maxExpansions;
+    /** the width and height of the cells positions are grouped into, in degrees */
+    private final double cellSize;
+
+    /**
+     * Constructor for LegPlanner class with the default weight and limits.
+     *
+     * @param noFlyIndex the spatial index over the no-fly zone
+     */
+    public LegPlanner(NoFlyIndex noFlyIndex) {
+        this(noFlyIndex, null);
+    }
+
+    /**
+     * Constructor for LegPlanner class with the default weight and limits, which does not search
+     * for goals the visibility graph has no route to.
+     *
+     * @param noFlyIndex      the spatial index over the no-fly zone
+     * @param visibilityGraph the visibility graph over the same no-fly zone, or null to search for every goal
+     */
+    public LegPlanner(NoFlyIndex noFlyIndex, VisibilityGraph visibilityGraph) {
+        this(noFlyIndex, visibilityGraph, DEFAULT_WEIGHT, DEFAULT_MAX_EXPANSIONS, DEFAULT_CELL_SIZE);
+    }
+
+    /**
+     * Constructor for LegPlanner class.
+     *
+     * @param noFlyIndex      the spatial index over the no-fly zone
+     * @param visibilityGraph the visibility graph over the same no-fly zone, or null to search for every goal
+     * @param weight          how strongly the estimate of remaining moves is weighted, values above 1
+     *                        such as FAST_WEIGHT find legs faster but they may be longer than the
+     *                        optimal leg
+     * @param maxExpansions   the number of states the search may expand before giving up
+     * @param cellSize        the width and height of the cells positions are grouped into, in degrees
+     */
+    public LegPlanner(NoFlyIndex noFlyIndex, VisibilityGraph visibilityGraph, double weight, int maxExpansions,
+                      double cellSize) {
+        this.noFlyIndex = noFlyIndex;
+        this.visibilityGraph = visibilityGraph;
+        this.weight = weight;
+        this.maxExpansions = maxExpansions;
+        this.cellSize = cellSize;
+    }
+
+    /**
+     * Finds the fewest moves which take the drone from the start to within 0.00015 degrees of the
+     * goal. Each state is scored by the number of moves taken so far plus an estimate of the moves
+     * remaining, which is never more than the true number as each move covers at most 0.00015
+     * degrees, so with a weight of 1 the leg found is the shortest. The state with the lowest
+     * score is expanded by trying all 36 angles, and positions falling into a cell which has
+     * already been reached in as few moves are discarded. If the visibility graph has no route to
+     * the goal, the goal cannot be reached and the leg is not searched for, as the search would
+     * only stop at the expansion limit.
+     *
+     * @param from the position the leg starts at
+     * @param goal the position the leg must end close to
+     * @return an array of the angles of each move in the leg, or null if no leg was found
+     * within the expansion limit
+     */
+    public int[] plan(LongLat from, LongLat goal) {
+        if (visibilityGraph != null && visibilityGraph.route(from, goal) == null) {
+            return null;
+        }
+        Search search = new Search(from, goal);
+        return search.run();
+    }
+
+    /**
+     * The state of a single search. Positions, move counts and the move used to reach each state
+     * are kept in growable arrays indexed by state, so the search does not create an object per state.
+     */
+    private class Search {
+        /** the position the leg must end close to */
+        private final LongLat goal;
+        /** the longitude of each state */
+        private double[] lon = new double[1024];
+        /** the latitude of each state */
+        private double[] lat = new double[1024];
+        /** the number of moves taken to reach each state */
+        private int[] moves = new int[1024];
+        /** the score of each state, the moves taken plus the weighted estimate of the moves remaining */
+        private double[] score = new double[1024];
+        /** the state each state was reached from, -1 for the start */
+        private int[] parent = new int[1024];
+        /** the direction of the move which reached each state */
+        private int[] direction = new int[1024];
+        /** the number of states created */
+        private int count = 0;
+        /** the fewest moves each cell has been reached in */
+        private final HashMap<Long, Integer> bestMoves = new HashMap<>();
+        /** the states waiting to be expanded, ordered by score and then by most moves taken */
+        private final PriorityQueue<Integer> open = new PriorityQueue<>((a, b) -> {
+            int compare = Double.compare(score[a], score[b]);
+            return compare != 0 ? compare : Integer.compare(moves[b], moves[a]);
+        });
+
+        /**
+         * @param from the position the leg starts at
+         * @param goal the position the leg must end close to
+         */
+        private Search(LongLat from, LongLat goal) {
+            this.goal = goal;
+            open.add(addState(from.longitude, from.latitude, 0, -1, -1));
+            bestMoves.put(cell(from.longitude, from.latitude), 0);
+        }
+
+        /**
+         * Runs the search until a state close to the goal is expanded, there are no states left,
+         * or the expansion limit is reached.
+         *
+         * @return an array of the angles of each move in the leg, or null if no leg was found
+         */
+        private int[] run() {
+            int expansions = 0;
+            while (!open.isEmpty() && expansions < maxExpansions) {
+                int state = open.poll();
+                if (remaining(lon[state], lat[state]) < 0) {
+                    return angles(state);
+                }
+                Integer best = bestMoves.get(cell(lon[state], lat[state]));
+                if (best != null && best < moves[state]) {
+                    continue;
+                }
+                expansions++;
+                for (int i = 0; i < LongLat.DIRECTIONS; i++) {
+                    double nextLon = lon[state] + LongLat.STEP_LONGITUDE[i];
+                    double nextLat = lat[state] + LongLat.STEP_LATITUDE[i];
+                    long nextCell = cell(nextLon, nextLat);
+                    Integer reached = bestMoves.get(nextCell);
+                    if (reached != null && reached <= moves[state] + 1) {
+                        continue;
+                    }
+                    if (!LongLat.isConfined(nextLon, nextLat)
+                            || noFlyIndex.intersects(lon[state], lat[state], nextLon, nextLat)) {
+                        continue;
+                    }
+                    bestMoves.put(nextCell, moves[state] + 1);
+                    open.add(addState(nextLon, nextLat, moves[state] + 1, state, i));
+                }
+            }
+            return null;
+        }
+
+        /**
+         * @param stateLon the longitude of a position
+         * @param stateLat the latitude of a position
+         * @return a lower bound on the moves needed to get close to the goal from the position,
+         * negative if the position is already close to it
+         */
+        private double remaining(double stateLon, double stateLat) {
+            double lonDiff = stateLon - goal.longitude;
+            double latDiff = stateLat - goal.latitude;
+            return Math.sqrt(lonDiff * lonDiff + latDiff * latDiff) / LongLat.MOVE_LENGTH - 1;
+        }
+
+        /**
+         * Creates a new state, growing the arrays if they are full.
+         *
+         * @param stateLon   the longitude of the state
+         * @param stateLat   the latitude of the state
+         * @param stateMoves the moves taken to reach the state
+         * @param from       the state it was reached from
+         * @param dir        the direction of the move which reached it
+         * @return the index of the new state
+         */
+        private int addState(double stateLon, double stateLat, int stateMoves, int from, int dir) {
+            if (count == lon.length) {
+                int size = count * 2;
+                lon = Arrays.copyOf(lon, size);
+                lat = Arrays.copyOf(lat, size);
+                moves = Arrays.copyOf(moves, size);
+                score = Arrays.copyOf(score, size);
+                parent = Arrays.copyOf(parent, size);
+                direction = Arrays.copyOf(direction, size);
+            }
+            lon[count] = stateLon;
+            lat[count] = stateLat;
+            moves[count] = stateMoves;
+            score[count] = stateMoves + weight * Math.max(0, remaining(stateLon, stateLat));
+            parent[count] = from;
+            direction[count] = dir;
+            return count++;
+        }
+
+        /**
+         * @param end the state the leg ends at
+         * @return the angles of the moves which lead from the start to the given state
+         */
+        private int[] angles(int end) {
+            int[] result = new int[moves[end]];
+            for (int state = end; parent[state] != -1; state = parent[state]) {
+                result[moves[state] - 1] = direction[state] * 10;
+            }
+            return result;
+        }
+    }
+
+    /**
+     * @param lon a longitude
+     * @param lat a latitude
+     * @return a key identifying the cell containing the position
+     */
+    private long cell(double lon, double lat) {
+        long column = (long) Math.floor(lon / cellSize);
+        long row = (long) Math.floor(lat / cellSize);
+        return (column << 32) ^ (row & 0xffffffffL);
+    }
+}
@@ -3,13 +3,43 @@ package uk.ac.ed.inf;
 /**
  * Represents a point as longitude and latitude,
  * and contains the functions for calculating drone position.
+ * The coordinates are also kept quantized to whole units of 1e-9 degrees, which two points are
+ * compared and hashed by, so points can be used as keys and points within rounding error of each
+ * other are equal. The longitude and latitude themselves are kept exactly as given, so the
+ * coordinates written out are unchanged.
  */
 public class LongLat {
 
+    /** the distance covered by a single move of the drone, in degrees */
+    public static final double MOVE_LENGTH = 0.00015;
+    /** the number of angles the drone can move at, one for each multiple of 10 degrees */
+    public static final int DIRECTIONS = 36;
+    /** the change in longitude made by a move at each angle, indexed by the angle divided by 10 */
+    static final double[] STEP_LONGITUDE = new double[DIRECTIONS];
+    /** the change in latitude made by a move at each angle, indexed by the angle divided by 10 */
+    static final double[] STEP_LATITUDE = new double[DIRECTIONS];
+    /** the size of a unit of the quantized coordinates, in degrees */
+    public static final double UNIT = 1e-9;
+    /** the longitude packed keys are taken relative to, in units, at the west of the confinement area */
+    private static final long ORIGIN_LONGITUDE = -3_192_473_000L;
+    /** the latitude packed keys are taken relative to, in units, at the south of the confinement area */
+    private static final long ORIGIN_LATITUDE = 55_942_617_000L;
+
+    static {
+        for (int i = 0; i < DIRECTIONS; i++) {
+            STEP_LONGITUDE[i] = Math.cos(Math.toRadians(i * 10)) * MOVE_LENGTH;
+            STEP_LATITUDE[i] = Math.sin(Math.toRadians(i * 10)) * MOVE_LENGTH;
+        }
+    }
+
     /** the longitude of the represented point */
     public final double longitude;
     /** ghe latitude of the represented point */
     public final double latitude;
+    /** the longitude of the represented point in units */
+    private final long longitudeUnits;
+    /** the latitude of the represented point in units */
+    private final long latitudeUnits;
 
     /**
      * Constructor for LongLat class given a pair of doubles.
@@ -20,6 +50,8 @@ public class LongLat {
     public LongLat(double lon, double lat) {
         longitude = lon;
         latitude = lat;
+        longitudeUnits = toUnits(lon);
+        latitudeUnits = toUnits(lat);
     }
 
     /**
@@ -30,6 +62,83 @@ public class LongLat {
     public LongLat(What3Words.LngLat coordinates) {
         longitude = coordinates.getLng();
         latitude = coordinates.getLat();
+        longitudeUnits = toUnits(longitude);
+        latitudeUnits = toUnits(latitude);
+    }
+
+    /**
+     * @param degrees a longitude or latitude
+     * @return the longitude or latitude rounded to the nearest unit
+     */
+    public static long toUnits(double degrees) {
+        return Math.round(degrees / UNIT);
+    }
+
+    /**
+     * @return the longitude of the point in units
+     */
+    public long getLongitudeUnits() {
+        return longitudeUnits;
+    }
+
+    /**
+     * @return the latitude of the point in units
+     */
+    public long getLatitudeUnits() {
+        return latitudeUnits;
+    }
+
+    /**
+     * Packs the quantized coordinates of the point into a single long, as the offsets in units
+     * from the south-west corner of the confinement area in the high and low 32 bits. Two points
+     * within about 2.1 degrees of the corner have the same key exactly when they are equal, so the
+     * key can be used in place of the point in maps and sets of primitives.
+     *
+     * @return the packed key of the point
+     * @throws IllegalArgumentException if the point is too far from the corner to be packed
+     */
+    public long key() {
+        return key(longitudeUnits, latitudeUnits);
+    }
+
+    /**
+     * Packs quantized coordinates into a single long without needing an instance of LongLat to be
+     * created for them, as described in key().
+     *
+     * @param lonUnits the longitude in units
+     * @param latUnits the latitude in units
+     * @return the packed key of the coordinates
+     * @throws IllegalArgumentException if the coordinates are too far from the corner to be packed
+     */
+    public static long key(long lonUnits, long latUnits) {
+        long lonOffset = lonUnits - ORIGIN_LONGITUDE;
+        long latOffset = latUnits - ORIGIN_LATITUDE;
+        if (lonOffset != (int) lonOffset || latOffset != (int) latOffset) {
+            throw new IllegalArgumentException("The coordinates " + lonUnits * UNIT + ", " + latUnits * UNIT
+                    + " are too far from the confinement area to be packed into a key");
+        }
+        return (lonOffset << 32) | (latOffset & 0xffffffffL);
+    }
+
+    /**
+     * @param other another object
+     * @return true if the other object is a LongLat with the same quantized coordinates
+     */
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof LongLat)) {
+            return false;
+        }
+        LongLat point = (LongLat) other;
+        return longitudeUnits == point.longitudeUnits && latitudeUnits == point.latitudeUnits;
+    }
+
+    /**
+     * @return a hash code of the quantized coordinates
+     */
+    @Override
+    public int hashCode() {
+        return 31 * Long.hashCode(longitudeUnits) + Long.hashCode(latitudeUnits);
     }
 
     /**
@@ -40,7 +149,20 @@ public class LongLat {
      * area and false otherwise
      */
     public boolean isConfined() {
-        return (longitude < -3.184319 & longitude > -3.192473) & (latitude > 55.942617 & latitude < 55.946233);
+        return isConfined(longitude, latitude);
+    }
+
+    /**
+     * Checks whether the given coordinates are within the confinement area, without
+     * needing an instance of LongLat to be created for them.
+     *
+     * @param lon the longitude of the point
+     * @param lat the latitude of the point
+     * @return a boolean value which is true if the point is within the confinement
+     * area and false otherwise
+     */
+    public static boolean isConfined(double lon, double lat) {
+        return (lon < -3.184319 & lon > -3.192473) & (lat > 55.942617 & lat < 55.946233);
     }
 
     /**
@@ -63,7 +185,7 @@ public class LongLat {
      * of this point and false otherwise
      */
     public boolean closeTo(LongLat compareValue){
-        return (distanceTo(compareValue) < 0.00015);
+        return (distanceTo(compareValue) < MOVE_LENGTH);
     }
 
     /**
@@ -76,10 +198,13 @@ public class LongLat {
     public LongLat nextPosition(int angle){
         double newLongitude;
         double newLatitude;
-        double moveLength = 0.00015;
+        double moveLength = MOVE_LENGTH;
         if (angle == -999) {
             return new LongLat(longitude, latitude);
         }
+        if (angle >= 0 & angle < 360 & angle % 10 == 0) {
+            return new LongLat(longitude + STEP_LONGITUDE[angle / 10], latitude + STEP_LATITUDE[angle / 10]);
+        }
 
         newLongitude = longitude + (Math.cos(Math.toRadians(angle))*moveLength);
         newLatitude = latitude + (Math.sin(Math.toRadians(angle))*moveLength);
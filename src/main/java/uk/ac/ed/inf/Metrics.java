@@ -0,0 +1,161 @@
+package uk.ac.ed.inf;
+
+import com.google.gson.GsonBuilder;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A registry of measurements made during a run, shared by the WebServer, Database and Path.
+ * It keeps the wall time spent in each phase of the run, named counters for the hot paths of
+ * the planner, and the planning time and number of moves for each order. Every part of it may be
+ * updated from several threads at once, and a summary is written as JSON at the end of the run.
+ */
+public class Metrics {
+    /** the wall time of the whole run, from reading the first file to writing the last output */
+    public static final String WALL = "wall";
+    /** the phase spent downloading the menus, buildings and shop locations */
+    public static final String FETCH = "fetch";
+    /** the phase spent reading the day's orders and looking up their addresses */
+    public static final String ORDER_LOAD = "orderLoad";
+    /** the phase spent planning the path */
+    public static final String PLANNING = "planning";
+    /** the phase spent choosing the sequence of orders, which is part of planning */
+    public static final String SEQUENCING = "sequencing";
+    /** the phase spent writing the GeoJSON file */
+    public static final String GEOJSON_WRITE = "geojsonWrite";
+    /** the phase spent writing the deliveries and flightpath tables */
+    public static final String DB_WRITE = "dbWrite";
+    /** the counter of moves checked by validMove */
+    public static final String VALID_MOVE_TESTS = "validMoveTests";
+    /** the counter of segments tested against the no-fly zone */
+    public static final String INTERSECTION_TESTS = "intersectionTests";
+    /** the counter of candidate moves scored by findMove */
+    public static final String FIND_MOVE_CANDIDATES = "findMoveCandidates";
+    /** the counter of whatthreewords addresses requested from the server */
+    public static final String WORDS_REQUESTED = "wordsRequested";
+    /** the counter of whatthreewords addresses found in the cache */
+    public static final String WORDS_CACHED = "wordsCached";
+    /** the counter of rows read from the database */
+    public static final String ROWS_READ = "rowsRead";
+    /** the counter of rows written to the database */
+    public static final String ROWS_WRITTEN = "rowsWritten";
+    /** the counter of legs flown from the route cache */
+    public static final String ROUTE_CACHE_HITS = "routeCacheHits";
+    /** the counter of legs which were not in the route cache, or could not be flown from it */
+    public static final String ROUTE_CACHE_MISSES = "routeCacheMisses";
+    /** the counter of orders left out of sequencing because they could not fit within the budget */
+    public static final String ORDERS_PRUNED = "ordersPruned";
+
+    /** the nanoseconds spent in each phase */
+    private final Map<String, LongAdder> phases = new ConcurrentHashMap<>();
+    /** the value of each counter */
+    private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    /** the planning time and number of moves of each order, in the order they were planned */
+    private final List<OrderMetrics> orders = new ArrayList<>();
+
+    /**
+     * Adds time spent in a phase. A phase which is entered several times, such as writing the
+     * tables of each day in a batch, accumulates its time. When days or drones are planned at the
+     * same time their times are summed, so a phase can take longer than the wall time of the run.
+     *
+     * @param phase the name of the phase
+     * @param nanos the time spent, in nanoseconds
+     */
+    public void addTime(String phase, long nanos) {
+        phases.computeIfAbsent(phase, name -> new LongAdder()).add(nanos);
+    }
+
+    /**
+     * Gets a counter, creating it the first time it is asked for. Hot paths should keep the
+     * counter they are given instead of asking for it each time it is incremented.
+     *
+     * @param name the name of the counter
+     * @return a LongAdder holding the value of the counter
+     */
+    public LongAdder counter(String name) {
+        return counters.computeIfAbsent(name, counterName -> new LongAdder());
+    }
+
+    /**
+     * Records the planning of a single order.
+     *
+     * @param orderNo the order number
+     * @param nanos   the time spent collecting and delivering the order, in nanoseconds
+     * @param moves   the number of moves made collecting and delivering the order
+     */
+    public void recordOrder(String orderNo, long nanos, int moves) {
+        synchronized (orders) {
+            orders.add(new OrderMetrics(orderNo, nanos / 1e6, moves));
+        }
+    }
+
+    /**
+     * @return the summary of the run as JSON: the milliseconds spent in each phase, the value of
+     * each counter and the planning time and moves of each order
+     */
+    public String toJson() {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        Map<String, Double> phaseMillis = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> phase : phases.entrySet()) {
+            phaseMillis.put(phase.getKey(), phase.getValue().sum() / 1e6);
+        }
+        Map<String, Long> counterValues = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> counter : counters.entrySet()) {
+            counterValues.put(counter.getKey(), counter.getValue().sum());
+        }
+        summary.put("phasesMillis", phaseMillis);
+        summary.put("counters", counterValues);
+        synchronized (orders) {
+            summary.put("orders", new ArrayList<>(orders));
+        }
+        return new GsonBuilder().setPrettyPrinting().create().toJson(summary);
+    }
+
+    /**
+     * Writes the summary of the run to a file, replacing it if it exists.
+     *
+     * @param file the file to write to
+     */
+    public void writeJson(File file) {
+        try (Writer writer = new FileWriter(file)) {
+            writer.write(toJson());
+        } catch (IOException e) {
+            System.err.println("Could not write the metrics to " + file + ".");
+        }
+    }
+
+    /**
+     * The measurements of a single order, as written in the summary.
+     */
+    private static class OrderMetrics {
+        /** the order number */
+        final String orderNo;
+        /** the time spent collecting and delivering the order, in milliseconds */
+        final double planningMillis;
+        /** the number of moves made collecting and delivering the order */
+        final int moves;
+
+        /**
+         * Constructor for OrderMetrics class.
+         *
+         * @param orderNo        the order number
+         * @param planningMillis the time spent collecting and delivering the order, in milliseconds
+         * @param moves          the number of moves made collecting and delivering the order
+         */
+        OrderMetrics(String orderNo, double planningMillis, int moves) {
+            this.orderNo = orderNo;
+            this.planningMillis = planningMillis;
+            this.moves = moves;
+        }
+    }
+}
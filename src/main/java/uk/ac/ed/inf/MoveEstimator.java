@@ -0,0 +1,448 @@
+package uk.ac.ed.inf;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Estimates the number of moves the drone needs to fly between two points without planning the
+ * leg, so that candidate orders can be compared or rejected cheaply. It gives two numbers:
+ * a lower bound, which the moves of any leg the drone can fly never fall below, and a realistic
+ * estimate of the moves the leg planner will find.
+ * Both follow the shortest path around the convex hulls of the no-fly zone, passing through the
+ * corners of the hulls. The shortest paths between every pair of corners are found once, and a
+ * segment is tested against each hull with the Cyrus-Beck algorithm, which clips the segment to
+ * the inside of the hull. For the lower bound each hull is first shrunk by one move, since the
+ * drone only needs to end within a move of the goal, which may take it past the corner of a hull.
+ * The realistic estimate stretches each straight part of the path by how far the drone falls
+ * short of flying straight when it can only move at multiples of 10 degrees.
+ * The estimator never changes once it is built, and may be called from several threads at once.
+ */
+public class MoveEstimator implements LegCost {
+    /** the most points whose shortest paths to every corner are remembered */
+    private static final int MAX_REMEMBERED = 4096;
+    /** the smallest length of a segment inside a hull which counts as passing through it */
+    private static final double EPSILON = 1e-12;
+
+    /** the shortest paths around the hulls shrunk by one move, used for the lower bound */
+    private final Geodesic shrunk;
+    /** the shortest paths around the hulls, used for the realistic estimate */
+    private final Geodesic exact;
+
+    /**
+     * Constructor for MoveEstimator class.
+     *
+     * @param hulls the corners of the convex hull around each polygon of the no-fly zone,
+     *              counter-clockwise
+     */
+    public MoveEstimator(List<List<LongLat>> hulls) {
+        List<List<LongLat>> shrunkHulls = new ArrayList<>();
+        for (List<LongLat> hull : hulls) {
+            List<LongLat> shrunkHull = shrink(hull, LongLat.MOVE_LENGTH);
+            if (shrunkHull.size() >= 3) {
+                shrunkHulls.add(shrunkHull);
+            }
+        }
+        shrunk = new Geodesic(shrunkHulls);
+        exact = new Geodesic(hulls);
+    }
+
+    /**
+     * Finds a lower bound on the moves needed to fly from one point to within 0.00015 degrees of
+     * another. Each move covers 0.00015 degrees and cannot cross a hull, so the drone covers at
+     * least the length of the shortest path around the shrunk hulls less the last move. The bound
+     * also holds for a route through other points with a hover at each, so the bounds of the legs
+     * of a whole sequence of orders never exceed the moves it takes.
+     *
+     * @param from the point the leg starts at
+     * @param to   the point the leg ends close to
+     * @return a number of moves which the leg never takes fewer than
+     */
+    public int lowerBound(LongLat from, LongLat to) {
+        double length = shrunk.length(from, to);
+        return (int) Math.max(0, Math.ceil(length / LongLat.MOVE_LENGTH - 1 - 1e-9));
+    }
+
+    /**
+     * Estimates the moves the leg planner will find to fly from one point to within 0.00015
+     * degrees of another. The shortest path around the hulls is followed, and the length of each
+     * straight part is divided by the distance the drone makes along it with each move, moving
+     * between the two angles either side of the direction of the part.
+     *
+     * @param from the point the leg starts at
+     * @param to   the point the leg ends close to
+     * @return the estimated number of moves
+     */
+    public int estimate(LongLat from, LongLat to) {
+        List<double[]> path = exact.path(from, to);
+        double moves = 0;
+        for (int i = 0; i + 1 < path.size(); i++) {
+            double lonDiff = path.get(i + 1)[0] - path.get(i)[0];
+            double latDiff = path.get(i + 1)[1] - path.get(i)[1];
+            double length = Math.sqrt(lonDiff * lonDiff + latDiff * latDiff);
+            moves += length / (LongLat.MOVE_LENGTH * progress(Math.toDegrees(Math.atan2(latDiff, lonDiff))));
+        }
+        // the drone stops up to a move short of the goal, but turns at each corner take it off the path
+        return (int) Math.max(0, Math.round(moves));
+    }
+
+    /**
+     * @param from the point the leg starts at
+     * @param to   the point the leg ends at
+     * @return the estimated number of moves, as given by estimate
+     */
+    @Override
+    public double moves(LongLat from, LongLat to) {
+        return estimate(from, to);
+    }
+
+    /**
+     * Finds how far the drone gets in a direction with each move, on average, when it can only
+     * move at multiples of 10 degrees and so alternates between the two angles either side of it.
+     *
+     * @param angle the direction in degrees
+     * @return the distance made in the direction with each move, as a fraction of a move
+     */
+    private static double progress(double angle) {
+        double offset = ((angle % 10) + 10) % 10;
+        if (offset < 1e-9 || offset > 10 - 1e-9) {
+            return 1;
+        }
+        double below = Math.toRadians(offset);
+        double above = Math.toRadians(10 - offset);
+        return Math.sin(Math.toRadians(10)) / (Math.sin(below) + Math.sin(above));
+    }
+
+    /**
+     * Shrinks a convex hull by moving each of its sides inwards by a distance, clipping the hull
+     * to the inside of each moved side in turn.
+     *
+     * @param hull     the corners of the hull, counter-clockwise
+     * @param distance the distance to move each side inwards, in degrees
+     * @return the corners of the shrunk hull, counter-clockwise, or fewer than 3 if nothing is left
+     */
+    static List<LongLat> shrink(List<LongLat> hull, double distance) {
+        List<double[]> shape = new ArrayList<>();
+        for (LongLat corner : hull) {
+            shape.add(new double[]{corner.longitude, corner.latitude});
+        }
+        int corners = hull.size();
+        for (int i = 0; i < corners && shape.size() >= 3; i++) {
+            LongLat start = hull.get(i);
+            LongLat end = hull.get((i + 1) % corners);
+            double edgeLon = end.longitude - start.longitude;
+            double edgeLat = end.latitude - start.latitude;
+            double length = Math.sqrt(edgeLon * edgeLon + edgeLat * edgeLat);
+            // the inward normal of a counter-clockwise side points to its left
+            double normalLon = -edgeLat / length;
+            double normalLat = edgeLon / length;
+            double offset = normalLon * start.longitude + normalLat * start.latitude + distance;
+            List<double[]> clipped = new ArrayList<>();
+            for (int j = 0; j < shape.size(); j++) {
+                double[] current = shape.get(j);
+                double[] next = shape.get((j + 1) % shape.size());
+                double currentSide = normalLon * current[0] + normalLat * current[1] - offset;
+                double nextSide = normalLon * next[0] + normalLat * next[1] - offset;
+                if (currentSide >= 0) {
+                    clipped.add(current);
+                }
+                if ((currentSide >= 0) != (nextSide >= 0)) {
+                    double t = currentSide / (currentSide - nextSide);
+                    clipped.add(new double[]{current[0] + t * (next[0] - current[0]),
+                            current[1] + t * (next[1] - current[1])});
+                }
+            }
+            shape = clipped;
+        }
+        List<LongLat> result = new ArrayList<>();
+        for (double[] corner : shape) {
+            result.add(new LongLat(corner[0], corner[1]));
+        }
+        return result;
+    }
+
+    /**
+     * The shortest paths around a set of convex obstacles, through their corners. The shortest
+     * path between every pair of corners is found once with Floyd-Warshall, and the shortest paths
+     * from a point to every corner are remembered for the points asked about most, so that a
+     * path between two remembered points is found by checking each corner once.
+     */
+    private static class Geodesic {
+        /** the longitude of each corner of each obstacle, indexed by obstacle */
+        private final double[][] obstacleLon;
+        /** the latitude of each corner of each obstacle, indexed by obstacle */
+        private final double[][] obstacleLat;
+        /** the smallest and largest longitude and latitude of each obstacle */
+        private final double[][] bounds;
+        /** the longitude of every corner */
+        private final double[] cornerLon;
+        /** the latitude of every corner */
+        private final double[] cornerLat;
+        /** the length of the shortest path between each pair of corners */
+        private final double[][] distance;
+        /** the corner after the first on the shortest path between each pair of corners, or -1 */
+        private final int[][] next;
+        /** the shortest paths from each remembered point to every corner */
+        private final Map<LongLat, Reach> reached = new ConcurrentHashMap<>();
+
+        /**
+         * @param obstacles the corners of each convex obstacle, counter-clockwise
+         */
+        Geodesic(List<List<LongLat>> obstacles) {
+            int count = obstacles.size();
+            obstacleLon = new double[count][];
+            obstacleLat = new double[count][];
+            bounds = new double[count][];
+            int total = 0;
+            for (List<LongLat> obstacle : obstacles) {
+                total += obstacle.size();
+            }
+            cornerLon = new double[total];
+            cornerLat = new double[total];
+            int corner = 0;
+            for (int o = 0; o < count; o++) {
+                List<LongLat> obstacle = obstacles.get(o);
+                obstacleLon[o] = new double[obstacle.size()];
+                obstacleLat[o] = new double[obstacle.size()];
+                bounds[o] = new double[]{Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+                        Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY};
+                for (int i = 0; i < obstacle.size(); i++) {
+                    LongLat point = obstacle.get(i);
+                    obstacleLon[o][i] = point.longitude;
+                    obstacleLat[o][i] = point.latitude;
+                    bounds[o][0] = Math.min(bounds[o][0], point.longitude);
+                    bounds[o][1] = Math.min(bounds[o][1], point.latitude);
+                    bounds[o][2] = Math.max(bounds[o][2], point.longitude);
+                    bounds[o][3] = Math.max(bounds[o][3], point.latitude);
+                    cornerLon[corner] = point.longitude;
+                    cornerLat[corner] = point.latitude;
+                    corner++;
+                }
+            }
+
+            distance = new double[total][total];
+            next = new int[total][total];
+            for (int i = 0; i < total; i++) {
+                for (int j = 0; j < total; j++) {
+                    if (i == j) {
+                        next[i][j] = -1;
+                    } else if (visible(cornerLon[i], cornerLat[i], cornerLon[j], cornerLat[j])) {
+                        distance[i][j] = length(cornerLon[i], cornerLat[i], cornerLon[j], cornerLat[j]);
+                        next[i][j] = j;
+                    } else {
+                        distance[i][j] = Double.POSITIVE_INFINITY;
+                        next[i][j] = -1;
+                    }
+                }
+            }
+            for (int k = 0; k < total; k++) {
+                for (int i = 0; i < total; i++) {
+                    for (int j = 0; j < total; j++) {
+                        if (distance[i][k] + distance[k][j] < distance[i][j]) {
+                            distance[i][j] = distance[i][k] + distance[k][j];
+                            next[i][j] = next[i][k];
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * @param from the point the path starts at
+         * @param to   the point the path ends at
+         * @return the length of the shortest path between the points
+         */
+        double length(LongLat from, LongLat to) {
+            if (visible(from.longitude, from.latitude, to.longitude, to.latitude)) {
+                return from.distanceTo(to);
+            }
+            Reach fromReach = reach(from);
+            Reach toReach = reach(to);
+            double best = Double.POSITIVE_INFINITY;
+            for (int corner = 0; corner < cornerLon.length; corner++) {
+                best = Math.min(best, fromReach.distance[corner] + toReach.distance[corner]);
+            }
+            // a point which cannot see any corner is only reachable in a straight line
+            return best == Double.POSITIVE_INFINITY ? from.distanceTo(to) : best;
+        }
+
+        /**
+         * @param from the point the path starts at
+         * @param to   the point the path ends at
+         * @return the longitude and latitude of each point on the shortest path between the points
+         */
+        List<double[]> path(LongLat from, LongLat to) {
+            List<double[]> points = new ArrayList<>();
+            points.add(new double[]{from.longitude, from.latitude});
+            if (!visible(from.longitude, from.latitude, to.longitude, to.latitude)) {
+                Reach fromReach = reach(from);
+                Reach toReach = reach(to);
+                int through = -1;
+                double best = Double.POSITIVE_INFINITY;
+                for (int corner = 0; corner < cornerLon.length; corner++) {
+                    double total = fromReach.distance[corner] + toReach.distance[corner];
+                    if (total < best) {
+                        best = total;
+                        through = corner;
+                    }
+                }
+                if (through != -1) {
+                    addCorners(points, fromReach.first[through], through);
+                    List<double[]> back = new ArrayList<>();
+                    addCorners(back, toReach.first[through], through);
+                    for (int i = back.size() - 2; i >= 0; i--) {
+                        points.add(back.get(i));
+                    }
+                }
+            }
+            points.add(new double[]{to.longitude, to.latitude});
+            return points;
+        }
+
+        /**
+         * Adds the corners on the shortest path between two corners, including both ends.
+         *
+         * @param points the list the corners are added to
+         * @param start  the corner the path starts at
+         * @param end    the corner the path ends at
+         */
+        private void addCorners(List<double[]> points, int start, int end) {
+            for (int corner = start; corner != -1; corner = corner == end ? -1 : next[corner][end]) {
+                points.add(new double[]{cornerLon[corner], cornerLat[corner]});
+            }
+        }
+
+        /**
+         * Finds the shortest path from a point to every corner, remembering it if there is room.
+         *
+         * @param point the point
+         * @return the shortest paths from the point to every corner
+         */
+        private Reach reach(LongLat point) {
+            Reach known = reached.get(point);
+            if (known != null) {
+                return known;
+            }
+            int total = cornerLon.length;
+            Reach reach = new Reach(total);
+            Arrays.fill(reach.distance, Double.POSITIVE_INFINITY);
+            Arrays.fill(reach.first, -1);
+            for (int seen = 0; seen < total; seen++) {
+                if (!visible(point.longitude, point.latitude, cornerLon[seen], cornerLat[seen])) {
+                    continue;
+                }
+                double toSeen = length(point.longitude, point.latitude, cornerLon[seen], cornerLat[seen]);
+                for (int corner = 0; corner < total; corner++) {
+                    double through = toSeen + distance[seen][corner];
+                    if (through < reach.distance[corner]) {
+                        reach.distance[corner] = through;
+                        reach.first[corner] = seen;
+                    }
+                }
+            }
+            if (reached.size() < MAX_REMEMBERED) {
+                reached.putIfAbsent(point, reach);
+            }
+            return reach;
+        }
+
+        /**
+         * Checks whether a segment passes through the inside of any obstacle. Each obstacle whose
+         * bounds the segment overlaps is tested with the Cyrus-Beck algorithm, which narrows the
+         * part of the segment inside every side of the obstacle. A segment which only touches a
+         * corner or runs along a side does not pass through it.
+         *
+         * @param startLon the longitude the segment starts at
+         * @param startLat the latitude the segment starts at
+         * @param endLon   the longitude the segment ends at
+         * @param endLat   the latitude the segment ends at
+         * @return true if the segment does not pass through any obstacle
+         */
+        private boolean visible(double startLon, double startLat, double endLon, double endLat) {
+            for (int o = 0; o < obstacleLon.length; o++) {
+                if (Math.max(startLon, endLon) <= bounds[o][0] || Math.min(startLon, endLon) >= bounds[o][2]
+                        || Math.max(startLat, endLat) <= bounds[o][1] || Math.min(startLat, endLat) >= bounds[o][3]) {
+                    continue;
+                }
+                if (crossesInside(o, startLon, startLat, endLon, endLat)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @param o        the index of the obstacle
+         * @param startLon the longitude the segment starts at
+         * @param startLat the latitude the segment starts at
+         * @param endLon   the longitude the segment ends at
+         * @param endLat   the latitude the segment ends at
+         * @return true if part of the segment longer than EPSILON is strictly inside the obstacle
+         */
+        private boolean crossesInside(int o, double startLon, double startLat, double endLon, double endLat) {
+            double[] lon = obstacleLon[o];
+            double[] lat = obstacleLat[o];
+            double dirLon = endLon - startLon;
+            double dirLat = endLat - startLat;
+            double enter = 0;
+            double exit = 1;
+            for (int i = 0; i < lon.length; i++) {
+                int j = (i + 1) % lon.length;
+                // the inward normal of a counter-clockwise side points to its left
+                double normalLon = -(lat[j] - lat[i]);
+                double normalLat = lon[j] - lon[i];
+                double inside = normalLon * (startLon - lon[i]) + normalLat * (startLat - lat[i]);
+                double towards = normalLon * dirLon + normalLat * dirLat;
+                if (Math.abs(towards) < 1e-30) {
+                    if (inside <= 0) {
+                        return false;
+                    }
+                    continue;
+                }
+                double t = -inside / towards;
+                if (towards > 0) {
+                    enter = Math.max(enter, t);
+                } else {
+                    exit = Math.min(exit, t);
+                }
+                if (enter >= exit) {
+                    return false;
+                }
+            }
+            return (exit - enter) * Math.sqrt(dirLon * dirLon + dirLat * dirLat) > EPSILON;
+        }
+
+        /**
+         * @param startLon the longitude of the first point
+         * @param startLat the latitude of the first point
+         * @param endLon   the longitude of the second point
+         * @param endLat   the latitude of the second point
+         * @return the distance between the points
+         */
+        private static double length(double startLon, double startLat, double endLon, double endLat) {
+            double lonDiff = endLon - startLon;
+            double latDiff = endLat - startLat;
+            return Math.sqrt(lonDiff * lonDiff + latDiff * latDiff);
+        }
+    }
+
+    /**
+     * The shortest paths from a point to every corner.
+     */
+    private static class Reach {
+        /** the length of the shortest path to each corner */
+        private final double[] distance;
+        /** the first corner on the shortest path to each corner, or -1 if it cannot be reached */
+        private final int[] first;
+
+        /**
+         * @param corners the number of corners
+         */
+        Reach(int corners) {
+            distance = new double[corners];
+            first = new int[corners];
+        }
+    }
+}
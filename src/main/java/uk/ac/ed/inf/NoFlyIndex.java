@@ -0,0 +1,214 @@
+package uk.ac.ed.inf;
+
+import java.awt.geom.Line2D;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A spatial index over the edges which outline the no-fly zone. The edges are stored in a
+ * uniform grid covering their bounding box, so a move only has to be tested against the edges
+ * in the cells it passes through, and a move which is nowhere near the no-fly zone is
+ * rejected with a single bounding box check.
+ */
+public class NoFlyIndex {
+    /** the default width and height of each cell of the grid, in degrees */
+    public static final double DEFAULT_CELL_SIZE = 2 * LongLat.MOVE_LENGTH;
+
+    /** the longitude of the start of each edge */
+    private final double[] startLon;
+    /** the latitude of the start of each edge */
+    private final double[] startLat;
+    /** the longitude of the end of each edge */
+    private final double[] endLon;
+    /** the latitude of the end of each edge */
+    private final double[] endLat;
+    /** the smallest longitude of any edge */
+    private final double minLon;
+    /** the smallest latitude of any edge */
+    private final double minLat;
+    /** the largest longitude of any edge */
+    private final double maxLon;
+    /** the largest latitude of any edge */
+    private final double maxLat;
+    /** the width and height of each cell of the grid, in degrees */
+    private final double cellSize;
+    /** the number of columns in the grid */
+    private final int columns;
+    /** the number of rows in the grid */
+    private final int rows;
+    /** the indices of the edges which pass through each cell, stored row by row */
+    private final int[][] cells;
+    /** the counter of segments tested against the no-fly zone */
+    private LongAdder intersectionTests = new LongAdder();
+
+    /**
+     * Constructor for NoFlyIndex class using the default cell size.
+     *
+     * @param edges the lines outlining the no-fly zone
+     */
+    public NoFlyIndex(List<Line2D.Double> edges) {
+        this(edges, DEFAULT_CELL_SIZE);
+    }
+
+    /**
+     * Constructor for NoFlyIndex class. It finds the bounding box of all the edges, divides it
+     * into a grid of square cells of the given size, and records which edges pass through the
+     * bounding box of each cell.
+     *
+     * @param edges    the lines outlining the no-fly zone
+     * @param cellSize the width and height of each cell of the grid, in degrees
+     */
+    public NoFlyIndex(List<Line2D.Double> edges, double cellSize) {
+        int edgeCount = edges.size();
+        this.cellSize = cellSize;
+        startLon = new double[edgeCount];
+        startLat = new double[edgeCount];
+        endLon = new double[edgeCount];
+        endLat = new double[edgeCount];
+        double lowLon = Double.POSITIVE_INFINITY;
+        double lowLat = Double.POSITIVE_INFINITY;
+        double highLon = Double.NEGATIVE_INFINITY;
+        double highLat = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < edgeCount; i++) {
+            Line2D.Double edge = edges.get(i);
+            startLon[i] = edge.x1;
+            startLat[i] = edge.y1;
+            endLon[i] = edge.x2;
+            endLat[i] = edge.y2;
+            lowLon = Math.min(lowLon, Math.min(edge.x1, edge.x2));
+            lowLat = Math.min(lowLat, Math.min(edge.y1, edge.y2));
+            highLon = Math.max(highLon, Math.max(edge.x1, edge.x2));
+            highLat = Math.max(highLat, Math.max(edge.y1, edge.y2));
+        }
+        minLon = lowLon;
+        minLat = lowLat;
+        maxLon = highLon;
+        maxLat = highLat;
+
+        if (edgeCount == 0) {
+            columns = 0;
+            rows = 0;
+            cells = new int[0][];
+            return;
+        }
+        columns = (int) ((maxLon - minLon) / cellSize) + 1;
+        rows = (int) ((maxLat - minLat) / cellSize) + 1;
+
+        // cells are slightly enlarged so rounding can never leave an edge out of a cell it touches
+        double margin = cellSize * 1e-6;
+        List<List<Integer>> cellEdges = new ArrayList<>();
+        for (int i = 0; i < columns * rows; i++) {
+            cellEdges.add(new ArrayList<>());
+        }
+        for (int i = 0; i < edgeCount; i++) {
+            int firstColumn = column(Math.min(startLon[i], endLon[i]));
+            int lastColumn = column(Math.max(startLon[i], endLon[i]));
+            int firstRow = row(Math.min(startLat[i], endLat[i]));
+            int lastRow = row(Math.max(startLat[i], endLat[i]));
+            for (int r = firstRow; r <= lastRow; r++) {
+                for (int c = firstColumn; c <= lastColumn; c++) {
+                    double cellLon = minLon + c * cellSize - margin;
+                    double cellLat = minLat + r * cellSize - margin;
+                    if (new Line2D.Double(startLon[i], startLat[i], endLon[i], endLat[i])
+                            .intersects(cellLon, cellLat, cellSize + 2 * margin, cellSize + 2 * margin)) {
+                        cellEdges.get(r * columns + c).add(i);
+                    }
+                }
+            }
+        }
+        cells = new int[columns * rows][];
+        for (int i = 0; i < cells.length; i++) {
+            List<Integer> indices = cellEdges.get(i);
+            cells[i] = new int[indices.size()];
+            for (int j = 0; j < indices.size(); j++) {
+                cells[i][j] = indices.get(j);
+            }
+        }
+    }
+
+    /**
+     * Checks whether the segment between the two given points crosses any edge of the no-fly zone.
+     * If the segment lies entirely outside the bounding box of the edges it returns straight away,
+     * otherwise it tests the edges in each cell the segment could pass through, and returns as soon
+     * as an intersection is found. Very long segments which span more cells than there are edges
+     * are tested against every edge instead.
+     *
+     * @param fromLon the longitude of the start of the segment
+     * @param fromLat the latitude of the start of the segment
+     * @param toLon   the longitude of the end of the segment
+     * @param toLat   the latitude of the end of the segment
+     * @return true if the segment crosses an edge of the no-fly zone
+     */
+    public boolean intersects(double fromLon, double fromLat, double toLon, double toLat) {
+        intersectionTests.increment();
+        double lowLon = Math.min(fromLon, toLon);
+        double highLon = Math.max(fromLon, toLon);
+        double lowLat = Math.min(fromLat, toLat);
+        double highLat = Math.max(fromLat, toLat);
+        if (highLon < minLon || lowLon > maxLon || highLat < minLat || lowLat > maxLat) {
+            return false;
+        }
+
+        int firstColumn = column(lowLon);
+        int lastColumn = column(highLon);
+        int firstRow = row(lowLat);
+        int lastRow = row(highLat);
+        if ((long) (lastColumn - firstColumn + 1) * (lastRow - firstRow + 1) > startLon.length) {
+            for (int i = 0; i < startLon.length; i++) {
+                if (crosses(i, fromLon, fromLat, toLon, toLat)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        for (int r = firstRow; r <= lastRow; r++) {
+            for (int c = firstColumn; c <= lastColumn; c++) {
+                for (int edge : cells[r * columns + c]) {
+                    if (crosses(edge, fromLon, fromLat, toLon, toLat)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param counter the counter incremented for each segment tested against the no-fly zone
+     */
+    public void setIntersectionCounter(LongAdder counter) {
+        intersectionTests = counter;
+    }
+
+    /**
+     * @param edge    the index of the edge being tested
+     * @param fromLon the longitude of the start of the segment
+     * @param fromLat the latitude of the start of the segment
+     * @param toLon   the longitude of the end of the segment
+     * @param toLat   the latitude of the end of the segment
+     * @return true if the segment crosses the given edge
+     */
+    private boolean crosses(int edge, double fromLon, double fromLat, double toLon, double toLat) {
+        return Line2D.linesIntersect(fromLon, fromLat, toLon, toLat,
+                startLon[edge], startLat[edge], endLon[edge], endLat[edge]);
+    }
+
+    /**
+     * @param lon a longitude
+     * @return the column of the grid containing the longitude, clamped to the grid
+     */
+    private int column(double lon) {
+        int column = (int) ((lon - minLon) / cellSize);
+        return Math.max(0, Math.min(columns - 1, column));
+    }
+
+    /**
+     * @param lat a latitude
+     * @return the row of the grid containing the latitude, clamped to the grid
+     */
+    private int row(double lat) {
+        int row = (int) ((lat - minLat) / cellSize);
+        return Math.max(0, Math.min(rows - 1, row));
+    }
+}
@@ -1,7 +1,8 @@
 package uk.ac.ed.inf;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -23,6 +24,8 @@ public class Order {
     private Set<String> shops;
     /** the total cost of the order in pence */
     private int cost;
+    /** the shops in the order they are to be visited, as planned by the order sequencer, or null */
+    private List<String> shopSequence;
 
     /**
      * Constructor for the Order class.
@@ -52,7 +55,7 @@ public class Order {
     /**
      * @param shopMap the shop map
      */
-    public void setShops(HashMap<String,String> shopMap) {
+    public void setShops(Map<String,String> shopMap) {
         ArrayList<String> shopList = new ArrayList<>();
         for (String item : items) {
             shopList.add(shopMap.get(item));
@@ -61,9 +64,9 @@ public class Order {
     }
 
     /**
-     * @param itemMap a HashMap containing each item from the menu and its price
+     * @param itemMap a Map containing each item from the menu and its price
      */
-    public void setCost(HashMap<String,Integer> itemMap) {
+    public void setCost(Map<String,Integer> itemMap) {
         int price = 50;
         for (String wantedItem : items) {
             price += itemMap.get(wantedItem);
@@ -71,6 +74,21 @@ public class Order {
         cost = price;
     }
 
+    /**
+     * @param sequence the shops in the order they are to be visited, as planned by the order sequencer
+     */
+    public void setShopSequence(List<String> sequence) {
+        shopSequence = sequence;
+    }
+
+    /**
+     * @return a List of the shops in the order they are to be visited, or null if they have not
+     * been planned by the order sequencer
+     */
+    public List<String> getShopSequence() {
+        return shopSequence;
+    }
+
     /**
      * @return a Set containing each shop on the list without duplicates
      */
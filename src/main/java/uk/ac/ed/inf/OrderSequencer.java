@@ -0,0 +1,599 @@
+package uk.ac.ed.inf;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Chooses which orders the drone delivers and in what sequence, so as to deliver as much money's
+ * worth of orders as possible without running out of moves. Each sequence is costed in moves,
+ * including collecting from every shop, hovering at each stop and returning to Appleton Tower at the
+ * end. A sequence is first built by inserting orders where they add the fewest moves for their value,
+ * then improved by simulated annealing, which adds, removes, swaps and reorders orders, and finally
+ * tidied with 2-opt and Or-opt moves. Several such searches are run in parallel from different random
+ * seeds on a fork-join pool, and the best sequence found is used.
+ */
+public class OrderSequencer {
+    /** the default number of searches run from different random seeds */
+    public static final int DEFAULT_STARTS = 16;
+    /** the default number of annealing steps made by each search */
+    public static final int DEFAULT_ITERATIONS = 20000;
+
+    /** the cost in moves of each leg between two points */
+    private final LegCost legCost;
+    /** the point the drone starts from */
+    private final LongLat start;
+    /** the point the drone must return to at the end */
+    private final LongLat end;
+    /** each shop and its location */
+    private final Map<String, LongLat> shopLocations;
+    /** the most moves the sequence may take */
+    private final double budget;
+    /** the number of searches run from different random seeds */
+    private final int starts;
+    /** the number of annealing steps made by each search */
+    private final int iterations;
+    /** the pool the searches are run on */
+    private final ForkJoinPool pool;
+
+    /**
+     * Constructor for OrderSequencer class using the default number of searches and steps, run on
+     * the common fork-join pool.
+     *
+     * @param legCost       the cost in moves of each leg between two points
+     * @param start         the point the drone starts from
+     * @param end           the point the drone must return to at the end
+     * @param shopLocations each shop and its location
+     * @param budget        the most moves the sequence may take
+     */
+    public OrderSequencer(LegCost legCost, LongLat start, LongLat end, Map<String, LongLat> shopLocations,
+                          double budget) {
+        this(legCost, start, end, shopLocations, budget, DEFAULT_STARTS, DEFAULT_ITERATIONS,
+                ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Constructor for OrderSequencer class.
+     *
+     * @param legCost       the cost in moves of each leg between two points
+     * @param start         the point the drone starts from
+     * @param end           the point the drone must return to at the end
+     * @param shopLocations each shop and its location
+     * @param budget        the most moves the sequence may take
+     * @param starts        the number of searches run from different random seeds
+     * @param iterations    the number of annealing steps made by each search
+     * @param pool          the pool the searches are run on
+     */
+    public OrderSequencer(LegCost legCost, LongLat start, LongLat end, Map<String, LongLat> shopLocations,
+                          double budget, int starts, int iterations, ForkJoinPool pool) {
+        this.legCost = legCost;
+        this.start = start;
+        this.end = end;
+        this.shopLocations = shopLocations;
+        this.budget = budget;
+        this.starts = starts;
+        this.iterations = iterations;
+        this.pool = pool;
+    }
+
+    /**
+     * @return the cost in moves of each leg between two points
+     */
+    LegCost getLegCost() {
+        return legCost;
+    }
+
+    /**
+     * @return the point the drone starts from
+     */
+    LongLat getStart() {
+        return start;
+    }
+
+    /**
+     * @return the most moves the sequence may take
+     */
+    double getBudget() {
+        return budget;
+    }
+
+    /**
+     * Finds the sequence of orders which delivers the most money's worth of orders within the budget.
+     * The costs of the legs between every pair of points are found once and shared by all searches.
+     * Each search uses its own seed, so the same orders always give the same sequence.
+     * Each order in the sequence is given the ordering of its shops it was costed with, as its
+     * shop sequence, so the drone can fly the same route.
+     *
+     * @param orders the orders which could be delivered
+     * @return a List of the orders to deliver, in the sequence they should be delivered
+     */
+    public List<Order> sequence(List<Order> orders) {
+        if (orders.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Problem problem = new Problem(orders);
+        Tour best = pool.submit(() -> IntStream.range(0, starts).parallel()
+                .mapToObj(seed -> problem.solve(new Random(seed)))
+                .max(Comparator.comparingDouble((Tour tour) -> tour.value)
+                        .thenComparingDouble(tour -> -tour.cost))
+                .orElseThrow()).join();
+        List<Order> result = new ArrayList<>();
+        int previous = 0;
+        for (int order : best.orders) {
+            Order chosen = orders.get(order);
+            chosen.setShopSequence(problem.shopSequence(previous, order));
+            result.add(chosen);
+            previous = problem.exit[order];
+        }
+        return result;
+    }
+
+    /**
+     * Removes the orders which could not be delivered within the budget even if they were the only
+     * order in the sequence, so that no legs need to be planned for them. The moves of each order on
+     * its own are bounded from below with the given lower bound on each leg: from the start to its
+     * shops in their best ordering, to its delivery point and back to the end, with a hover at each
+     * stop. The lower bound must never exceed the moves of a leg, and must not be lowered by
+     * stopping at another point on the way, since a hover is made there; the bound of a
+     * MoveEstimator is such a bound. Any sequence containing a removed order would then be over
+     * the budget, so the orders chosen by sequence are the same.
+     *
+     * @param orders        the orders which could be delivered
+     * @param lowerBound    a lower bound on the moves of each leg between two points
+     * @param start         the point the drone starts from
+     * @param end           the point the drone must return to at the end
+     * @param shopLocations each shop and its location
+     * @param budget        the most moves the sequence may take
+     * @return a List of the orders which may fit within the budget, in the order they were given
+     */
+    public static List<Order> withinBudget(List<Order> orders, LegCost lowerBound, LongLat start, LongLat end,
+                                           Map<String, LongLat> shopLocations, double budget) {
+        List<Order> result = new ArrayList<>();
+        for (Order order : orders) {
+            List<LongLat> shops = new ArrayList<>();
+            for (String shop : order.getShopList()) {
+                shops.add(shopLocations.get(shop));
+            }
+            List<int[]> orderings = new ArrayList<>();
+            permute(IntStream.range(0, shops.size()).toArray(), 0, orderings);
+            LongLat deliverTo = order.getDeliverTo();
+            double best = Double.POSITIVE_INFINITY;
+            for (int[] ordering : orderings) {
+                // one hover at each shop and one at the delivery point
+                double cost = ordering.length + 1;
+                LongLat previous = start;
+                for (int shop : ordering) {
+                    cost += lowerBound.moves(previous, shops.get(shop));
+                    previous = shops.get(shop);
+                }
+                cost += lowerBound.moves(previous, deliverTo) + lowerBound.moves(deliverTo, end);
+                best = Math.min(best, cost);
+            }
+            if (best <= budget) {
+                result.add(order);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Adds every ordering of the given shops to the list. Orders contain at most a few shops, so
+     * all orderings can be tried.
+     *
+     * @param shops     the shops, permuted in place
+     * @param from      the first position still to be permuted
+     * @param orderings the list the orderings are added to
+     */
+    private static void permute(int[] shops, int from, List<int[]> orderings) {
+        if (from >= shops.length - 1) {
+            orderings.add(shops.clone());
+            return;
+        }
+        for (int i = from; i < shops.length; i++) {
+            int swap = shops[from];
+            shops[from] = shops[i];
+            shops[i] = swap;
+            permute(shops, from + 1, orderings);
+            shops[i] = shops[from];
+            shops[from] = swap;
+        }
+    }
+
+    /**
+     * A sequence of orders, given by their index, along with its cost in moves and its value in pence.
+     */
+    private static class Tour {
+        /** the indices of the orders in the sequence */
+        private final List<Integer> orders;
+        /** the cost of the sequence in moves */
+        private final double cost;
+        /** the value of the sequence in pence */
+        private final double value;
+
+        /**
+         * @param orders the indices of the orders in the sequence
+         * @param cost   the cost of the sequence in moves
+         * @param value  the value of the sequence in pence
+         */
+        private Tour(List<Integer> orders, double cost, double value) {
+            this.orders = orders;
+            this.cost = cost;
+            this.value = value;
+        }
+    }
+
+    /**
+     * The orders being sequenced, reduced to indices into a table of the costs of the legs
+     * between each pair of points.
+     */
+    private class Problem {
+        /** the number of orders */
+        private final int size;
+        /** the value of each order in pence */
+        private final double[] value;
+        /** the index of the delivery point of each order */
+        private final int[] exit;
+        /** for each order, the index of the first shop visited for each way of ordering its shops */
+        private final int[][] firstShop;
+        /** for each order, the moves from the first shop to the delivery for each way of ordering its shops */
+        private final double[][] internalCost;
+        /** for each order, the names of its shops in each way of ordering them */
+        private final String[][][] shopOrderings;
+        /** the cost in moves of the leg between each pair of points */
+        private final double[][] legs;
+        /** the index of the point the drone returns to */
+        private final int endIndex;
+
+        /**
+         * Builds the table of points and leg costs for the given orders. The start is point 0, and
+         * each shop and delivery point is given an index the first time it is seen. Points are
+         * compared by their quantized coordinates, so orders delivered to the same place, or to a
+         * shop, share the index of that point.
+         *
+         * @param orders the orders which could be delivered
+         */
+        private Problem(List<Order> orders) {
+            size = orders.size();
+            List<LongLat> points = new ArrayList<>();
+            Map<LongLat, Integer> indices = new HashMap<>();
+            points.add(start);
+            indices.put(start, 0);
+            endIndex = indexOf(end, points, indices);
+            value = new double[size];
+            exit = new int[size];
+            int[][] shops = new int[size][];
+            String[][] names = new String[size][];
+            for (int i = 0; i < size; i++) {
+                Order order = orders.get(i);
+                value[i] = order.getCost();
+                exit[i] = indexOf(order.getDeliverTo(), points, indices);
+                List<String> shopNames = new ArrayList<>(order.getShopList());
+                Collections.sort(shopNames);
+                names[i] = shopNames.toArray(new String[0]);
+                shops[i] = new int[shopNames.size()];
+                for (int j = 0; j < shopNames.size(); j++) {
+                    shops[i][j] = indexOf(shopLocations.get(shopNames.get(j)), points, indices);
+                }
+            }
+
+            legs = new double[points.size()][points.size()];
+            for (int i = 0; i < points.size(); i++) {
+                for (int j = 0; j < points.size(); j++) {
+                    legs[i][j] = i == j ? 0 : legCost.moves(points.get(i), points.get(j));
+                }
+            }
+
+            firstShop = new int[size][];
+            internalCost = new double[size][];
+            shopOrderings = new String[size][][];
+            for (int i = 0; i < size; i++) {
+                // the positions of the shops are permuted, so shops at the same point keep their names
+                List<int[]> orderings = new ArrayList<>();
+                permute(IntStream.range(0, shops[i].length).toArray(), 0, orderings);
+                firstShop[i] = new int[orderings.size()];
+                internalCost[i] = new double[orderings.size()];
+                shopOrderings[i] = new String[orderings.size()][];
+                for (int j = 0; j < orderings.size(); j++) {
+                    int[] ordering = orderings.get(j);
+                    shopOrderings[i][j] = new String[ordering.length];
+                    for (int k = 0; k < ordering.length; k++) {
+                        shopOrderings[i][j][k] = names[i][ordering[k]];
+                    }
+                    // one hover at each shop and one at the delivery point
+                    double cost = ordering.length + 1;
+                    for (int k = 0; k + 1 < ordering.length; k++) {
+                        cost += legs[shops[i][ordering[k]]][shops[i][ordering[k + 1]]];
+                    }
+                    cost += legs[shops[i][ordering[ordering.length - 1]]][exit[i]];
+                    firstShop[i][j] = shops[i][ordering[0]];
+                    internalCost[i][j] = cost;
+                }
+            }
+        }
+
+        /**
+         * @param point   a point the drone may visit
+         * @param points  the points given an index so far
+         * @param indices the index of each point given one so far
+         * @return the index of the point, adding it if it has not been seen
+         */
+        private int indexOf(LongLat point, List<LongLat> points, Map<LongLat, Integer> indices) {
+            Integer index = indices.get(point);
+            if (index == null) {
+                index = points.size();
+                points.add(point);
+                indices.put(point, index);
+            }
+            return index;
+        }
+
+        /**
+         * @param previous the index of the point the drone is at
+         * @param order    the index of the order
+         * @return the moves needed to collect and deliver the order from the point, choosing the
+         * best ordering of its shops
+         */
+        private double visitCost(int previous, int order) {
+            double best = Double.POSITIVE_INFINITY;
+            for (int i = 0; i < firstShop[order].length; i++) {
+                best = Math.min(best, legs[previous][firstShop[order][i]] + internalCost[order][i]);
+            }
+            return best;
+        }
+
+        /**
+         * @param previous the index of the point the drone is at
+         * @param order    the index of the order
+         * @return the names of the shops of the order in the ordering visitCost charges for it
+         */
+        private List<String> shopSequence(int previous, int order) {
+            int best = 0;
+            for (int i = 1; i < firstShop[order].length; i++) {
+                if (legs[previous][firstShop[order][i]] + internalCost[order][i]
+                        < legs[previous][firstShop[order][best]] + internalCost[order][best]) {
+                    best = i;
+                }
+            }
+            return List.of(shopOrderings[order][best]);
+        }
+
+        /**
+         * @param tour the indices of the orders in a sequence
+         * @return the moves needed to deliver every order in the sequence and return at the end
+         */
+        private double cost(List<Integer> tour) {
+            double cost = 0;
+            int previous = 0;
+            for (int order : tour) {
+                cost += visitCost(previous, order);
+                previous = exit[order];
+            }
+            return cost + legs[previous][endIndex];
+        }
+
+        /**
+         * @param tour the indices of the orders in a sequence
+         * @return the total value of the orders in the sequence in pence
+         */
+        private double value(List<Integer> tour) {
+            double total = 0;
+            for (int order : tour) {
+                total += value[order];
+            }
+            return total;
+        }
+
+        /**
+         * Runs a single search: a randomised insertion to build a first sequence, simulated annealing
+         * to explore other sequences, and a final local search on the best sequence found.
+         *
+         * @param random the source of randomness for this search
+         * @return the best sequence found
+         */
+        private Tour solve(Random random) {
+            List<Integer> tour = new ArrayList<>();
+            insertOrders(tour, random, random.nextDouble() * 0.2);
+            improve(tour);
+            insertOrders(tour, random, 0);
+            List<Integer> best = new ArrayList<>(tour);
+            double bestValue = value(tour);
+            double bestCost = cost(tour);
+
+            double currentValue = bestValue;
+            double currentCost = bestCost;
+            double startTemperature = 0;
+            for (double orderValue : value) {
+                startTemperature = Math.max(startTemperature, orderValue);
+            }
+            for (int step = 0; step < iterations; step++) {
+                double temperature = startTemperature * (1 - (double) step / iterations) + 1e-9;
+                List<Integer> candidate = neighbour(tour, random);
+                if (candidate == null) {
+                    continue;
+                }
+                double candidateCost = cost(candidate);
+                if (candidateCost > budget) {
+                    continue;
+                }
+                double candidateValue = value(candidate);
+                // moves are worth a little, so a shorter sequence of the same value is preferred
+                double change = (candidateValue - currentValue) - (candidateCost - currentCost) * 1e-3;
+                if (change >= 0 || random.nextDouble() < Math.exp(change / temperature)) {
+                    tour = candidate;
+                    currentValue = candidateValue;
+                    currentCost = candidateCost;
+                    if (currentValue > bestValue || (currentValue == bestValue && currentCost < bestCost)) {
+                        best = new ArrayList<>(tour);
+                        bestValue = currentValue;
+                        bestCost = currentCost;
+                    }
+                }
+            }
+
+            improve(best);
+            insertOrders(best, random, 0);
+            return new Tour(best, cost(best), value(best));
+        }
+
+        /**
+         * Repeatedly inserts the unused order with the highest value per extra move, at the position
+         * where it adds the fewest moves, until no further order fits within the budget. The value per
+         * move of each candidate can be perturbed randomly so that different searches start differently.
+         *
+         * @param tour   the sequence to insert orders into
+         * @param random the source of randomness for the perturbation
+         * @param noise  how much the value per move of each candidate is perturbed by
+         */
+        private void insertOrders(List<Integer> tour, Random random, double noise) {
+            boolean[] used = new boolean[size];
+            for (int order : tour) {
+                used[order] = true;
+            }
+            double cost = cost(tour);
+            while (true) {
+                int bestOrder = -1;
+                int bestPosition = -1;
+                double bestScore = Double.NEGATIVE_INFINITY;
+                double bestCost = 0;
+                for (int order = 0; order < size; order++) {
+                    if (used[order]) {
+                        continue;
+                    }
+                    for (int position = 0; position <= tour.size(); position++) {
+                        tour.add(position, order);
+                        double newCost = cost(tour);
+                        tour.remove(position);
+                        if (newCost > budget) {
+                            continue;
+                        }
+                        double score = value[order] / Math.max(newCost - cost, 1)
+                                * (1 + noise * random.nextDouble());
+                        if (score > bestScore) {
+                            bestScore = score;
+                            bestOrder = order;
+                            bestPosition = position;
+                            bestCost = newCost;
+                        }
+                    }
+                }
+                if (bestOrder == -1) {
+                    return;
+                }
+                tour.add(bestPosition, bestOrder);
+                used[bestOrder] = true;
+                cost = bestCost;
+            }
+        }
+
+        /**
+         * Shortens the sequence without changing which orders it contains, by reversing sections of
+         * it (2-opt) and moving runs of up to three orders elsewhere (Or-opt), until neither finds an
+         * improvement.
+         *
+         * @param tour the sequence to shorten, changed in place
+         */
+        private void improve(List<Integer> tour) {
+            double cost = cost(tour);
+            boolean improved = true;
+            while (improved) {
+                improved = false;
+                for (int i = 0; i < tour.size() - 1 && !improved; i++) {
+                    for (int j = i + 1; j < tour.size() && !improved; j++) {
+                        Collections.reverse(tour.subList(i, j + 1));
+                        double newCost = cost(tour);
+                        if (newCost < cost - 1e-9) {
+                            cost = newCost;
+                            improved = true;
+                        } else {
+                            Collections.reverse(tour.subList(i, j + 1));
+                        }
+                    }
+                }
+                for (int length = 1; length <= 3 && !improved; length++) {
+                    for (int i = 0; i + length <= tour.size() && !improved; i++) {
+                        List<Integer> run = new ArrayList<>(tour.subList(i, i + length));
+                        List<Integer> rest = new ArrayList<>(tour);
+                        rest.subList(i, i + length).clear();
+                        for (int position = 0; position <= rest.size() && !improved; position++) {
+                            if (position == i) {
+                                continue;
+                            }
+                            List<Integer> moved = new ArrayList<>(rest);
+                            moved.addAll(position, run);
+                            double newCost = cost(moved);
+                            if (newCost < cost - 1e-9) {
+                                tour.clear();
+                                tour.addAll(moved);
+                                cost = newCost;
+                                improved = true;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * Makes a random change to the sequence: inserting an unused order, removing an order,
+         * swapping an order for an unused one, moving an order, or reversing a section.
+         *
+         * @param tour   the current sequence
+         * @param random the source of randomness
+         * @return the changed sequence, or null if the chosen change could not be made
+         */
+        private List<Integer> neighbour(List<Integer> tour, Random random) {
+            List<Integer> candidate = new ArrayList<>(tour);
+            List<Integer> unused = new ArrayList<>();
+            boolean[] used = new boolean[size];
+            for (int order : tour) {
+                used[order] = true;
+            }
+            for (int order = 0; order < size; order++) {
+                if (!used[order]) {
+                    unused.add(order);
+                }
+            }
+            switch (random.nextInt(5)) {
+                case 0:
+                    if (unused.isEmpty()) {
+                        return null;
+                    }
+                    candidate.add(random.nextInt(candidate.size() + 1), unused.get(random.nextInt(unused.size())));
+                    return candidate;
+                case 1:
+                    if (candidate.isEmpty()) {
+                        return null;
+                    }
+                    candidate.remove(random.nextInt(candidate.size()));
+                    return candidate;
+                case 2:
+                    if (candidate.isEmpty() || unused.isEmpty()) {
+                        return null;
+                    }
+                    candidate.set(random.nextInt(candidate.size()), unused.get(random.nextInt(unused.size())));
+                    return candidate;
+                case 3:
+                    if (candidate.size() < 2) {
+                        return null;
+                    }
+                    int moved = candidate.remove(random.nextInt(candidate.size()));
+                    candidate.add(random.nextInt(candidate.size() + 1), moved);
+                    return candidate;
+                default:
+                    if (candidate.size() < 2) {
+                        return null;
+                    }
+                    int first = random.nextInt(candidate.size());
+                    int second = random.nextInt(candidate.size());
+                    Collections.reverse(candidate.subList(Math.min(first, second), Math.max(first, second) + 1));
+                    return candidate;
+            }
+        }
+    }
+}
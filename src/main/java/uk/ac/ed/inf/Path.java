@@ -7,28 +7,51 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
 
 /**
  * Contains the functions required for the application to generate the path the drone will
  * take and write the details of the path taken to the output file and tables.
  */
 public class Path {
+    /** the most moves the drone can make in a day */
+    public static final int MAX_MOVES = 1500;
+    /** the number of moves kept at each step of the lookahead in findMove */
+    static final int BEAM_WIDTH = 6;
     /** the list of orders from the database */
     private final ArrayList<Order> orders;
-    /** the lines which define the convex hull of the points defining the no-fly zone */
-    private final ArrayList<Line2D.Double> convexHullLines = new ArrayList<>();
+    /** the lines of the convex hulls around the polygons of the no-fly zone */
+    private final ArrayList<Line2D.Double> hullLines = new ArrayList<>();
+    /** the corners of the convex hull around each polygon of the no-fly zone */
+    private final List<List<LongLat>> hulls = new ArrayList<>();
+    /** the spatial index over the lines of the convex hulls, used to check moves */
+    private final NoFlyIndex noFlyIndex;
+    /** the visibility graph used to plan routes around the convex hulls */
+    private final VisibilityGraph visibilityGraph;
+    /** the A* planner used to find the fewest moves for each leg */
+    private final LegPlanner legPlanner;
+    /** the estimator of the moves of each leg, used to leave out orders which cannot fit */
+    private final MoveEstimator moveEstimator;
+    /** the order numbers of the orders left out of sequencing because they cannot fit */
+    private final Set<String> prunedOrders = new HashSet<>();
+    /** the cache of legs already planned, or null if every leg is planned */
+    private RouteCache routeCache;
     /** a list of landmarks obtained from the server */
     private final ArrayList<LongLat> landmarks;
     /** each of the shops and the coordinates of their locations */
-    private final HashMap<String, LongLat> shopLocations;
+    private final Map<String, LongLat> shopLocations;
     /** the location of appleton tower */
     private final LongLat appletonTower;
-    /** a list of the moves made by the drone */
-    private final ArrayList<Move> moves = new ArrayList<>();
-    /** the lines representing each move which is made by the drone */
-    private final ArrayList<Point> movesLines = new ArrayList<>();
+    /** the moves made by the drone */
+    private final Flightpath flightpath = new Flightpath();
     /** the current location of the drone, starts at appleton tower */
     private LongLat currentLoc;
     /** the total cost of all the orders from the day */
@@ -41,84 +64,152 @@ public class Path {
     double orderCount;
     /** the current order being picked up or delivered */
     Order currentOrder;
+    /** whether the orders are sequenced by the order sequencer instead of by chooseOrder */
+    private boolean optimiseSequence = false;
+    /** the orders still to be delivered, in the sequence chosen by the order sequencer */
+    private ArrayList<Order> plannedOrders;
+    /** the moves needed for each leg between the shops, delivery points and Appleton Tower */
+    private LegCostMatrix legCosts;
+    /** whether the path has been started with begin */
+    private boolean started = false;
+    /** whether the path has been finished with finish */
+    private boolean finished = false;
+    /** whether the drone has run out of moves for more orders */
+    private boolean outOfMoves = false;
+    /** whether orders have been added or cancelled since the sequence was planned */
+    private boolean replanNeeded = false;
+    /** the number of moves findMove looks ahead when choosing a move, where 1 is a greedy choice */
+    private int lookaheadDepth = 1;
+    /** whether the summary of the day is printed when the path is finished */
+    private boolean printSummary = true;
+    /** the summary of the day, once the path is finished */
+    private String summary;
+    /** the registry the timings of planning and the counters of the hot paths are recorded in */
+    private Metrics metrics = new Metrics();
+    /** the counter of moves checked by validMove */
+    private LongAdder validMoveTests = metrics.counter(Metrics.VALID_MOVE_TESTS);
+    /** the counter of candidate moves scored by findMove */
+    private LongAdder findMoveCandidates = metrics.counter(Metrics.FIND_MOVE_CANDIDATES);
+    /** the counter of legs flown from the route cache */
+    private LongAdder routeCacheHits = metrics.counter(Metrics.ROUTE_CACHE_HITS);
+    /** the counter of legs which were not in the route cache, or could not be flown from it */
+    private LongAdder routeCacheMisses = metrics.counter(Metrics.ROUTE_CACHE_MISSES);
 
 
     /**
-     * Constructor for the Path class. The points which define the no-fly zone are obtained
-     * from the server and used to create a convex hull of all the points in the no-fly zone.
-     * The shop locations and Appleton Tower are added to the list of landmarks obtained from
-     * the web server.
+     * Constructor for the Path class. The polygons which define the no-fly zone are obtained
+     * from the server, a convex hull is created around each polygon, and the lines of every
+     * hull are stored in a spatial index for checking moves. The shop locations and Appleton
+     * Tower are added to the list of landmarks obtained from the web server, and a visibility
+     * graph is built from the landmarks and the corners of the hulls to plan routes.
      *
      * @param orderList the list of orders obtained from the database
      * @param server    an instance of WebServer, used to get the building locations
      */
     public Path(ArrayList<Order> orderList, WebServer server){
+        this(orderList, server.getNoFlyPolygons(), server.getLandmarks(), server.getLocationMap());
+    }
+
+    /**
+     * Constructor for the Path class given the buildings directly instead of a WebServer, so that
+     * paths can be planned from data which has already been loaded.
+     *
+     * @param orderList       the list of orders obtained from the database
+     * @param noFlyPolygons   the points outlining each polygon of the no-fly zone
+     * @param landmarkList    the locations of the landmarks, which the shops and Appleton Tower are added to
+     * @param shopLocationMap each of the shops and the coordinates of their locations
+     */
+    public Path(ArrayList<Order> orderList, List<List<Point>> noFlyPolygons, ArrayList<LongLat> landmarkList,
+                Map<String, LongLat> shopLocationMap) {
         orders = orderList;
         orderCount = orders.size();
-        final ArrayList<Point> noFlyZonePoints = server.parseNoFlyZone();
         appletonTower = new LongLat(-3.186874, 55.944494);
         currentLoc = appletonTower;
-        landmarks = server.parseLandmarks();
-        shopLocations = server.getLocationMap();
+        landmarks = landmarkList;
+        shopLocations = shopLocationMap;
         landmarks.addAll(shopLocations.values());
         landmarks.add(appletonTower);
-        convexHull(noFlyZonePoints);
+        for (List<Point> polygon : noFlyPolygons) {
+            List<LongLat> hull = convexHull(polygon);
+            hulls.add(hull);
+            int corners = hull.size();
+            for (int i = 0; i < corners; i++) {
+                LongLat start = hull.get(i);
+                LongLat end = hull.get((i + 1) % corners);
+                hullLines.add(new Line2D.Double(start.longitude, start.latitude, end.longitude, end.latitude));
+            }
+        }
+        noFlyIndex = new NoFlyIndex(hullLines);
+        noFlyIndex.setIntersectionCounter(metrics.counter(Metrics.INTERSECTION_TESTS));
+        visibilityGraph = new VisibilityGraph(hulls, landmarks, noFlyIndex);
+        legPlanner = new LegPlanner(noFlyIndex, visibilityGraph);
+        moveEstimator = new MoveEstimator(hulls);
     }
 
     /**
-     * Creates a convex hull of the points defining the no-fly zone. It finds the leftmost
-     * point and moves counter-clockwise round the points the find a selection of points
-     * which surround the rest of the points, until it returns to the leftmost point.
+     * Creates the convex hull of the points outlining a polygon of the no-fly zone with the
+     * monotone chain algorithm. The points are sorted by longitude and then latitude, and the lower
+     * and upper halves of the hull are built in one pass each, dropping any point which does not
+     * make a counter-clockwise turn. Repeated points, such as the point closing the polygon, are
+     * dropped once the points are sorted.
      *
-     * @param points the points which define the no-fly zone that create the convex hull
+     * @param points the points outlining the polygon
+     * @return a List of the corners of the convex hull, counter-clockwise from the leftmost point
      */
-    private void convexHull(List<Point> points) {
-        List<Point> result = new ArrayList<>();
-        int length = points.size();
-
-        int leftmost = 0;
-        for (int i = 1; i<length; i++)
-            if (points.get(i).longitude()<points.get(leftmost).longitude())
-                leftmost = i;
-
-        int hullPoint = leftmost;
-        int endpoint;
+    static List<LongLat> convexHull(List<Point> points) {
+        List<Point> sorted = new ArrayList<>();
+        List<Point> ordered = new ArrayList<>(points);
+        ordered.sort(Comparator.comparingDouble(Point::longitude).thenComparingDouble(Point::latitude));
+        for (Point point : ordered) {
+            Point last = sorted.isEmpty() ? null : sorted.get(sorted.size() - 1);
+            if (last == null || last.longitude() != point.longitude() || last.latitude() != point.latitude()) {
+                sorted.add(point);
+            }
+        }
+        int length = sorted.size();
+        List<LongLat> corners = new ArrayList<>();
+        if (length < 3) {
+            for (Point point : sorted) {
+                corners.add(new LongLat(point.longitude(), point.latitude()));
+            }
+            return corners;
+        }
 
-        do {
-            result.add(points.get(hullPoint));
-            endpoint = (hullPoint + 1) % length;
-            for (int i = 0; i<length; i++) {
-                if (Orientation(points.get(hullPoint), points.get(i), points.get(endpoint))) {
-                    endpoint = i;
-                }
+        Point[] hull = new Point[2 * length];
+        int size = 0;
+        for (Point point : sorted) {
+            while (size >= 2 && cross(hull[size - 2], hull[size - 1], point) <= 0) {
+                size--;
             }
-            hullPoint = endpoint;
+            hull[size++] = point;
+        }
+        int lowerSize = size + 1;
+        for (int i = length - 2; i >= 0; i--) {
+            while (size >= lowerSize && cross(hull[size - 2], hull[size - 1], sorted.get(i)) <= 0) {
+                size--;
+            }
+            hull[size++] = sorted.get(i);
         }
-        while (hullPoint != leftmost);
 
-        int resultSize = result.size();
-        for (int i = 0; i < resultSize-1; i++) {
-            Line2D.Double line = new Line2D.Double(result.get(i).longitude(),result.get(i).latitude(),
-                    result.get(i+1).longitude(),result.get(i+1).latitude());
-            convexHullLines.add(line);
+        // the last point is the leftmost point again
+        for (int i = 0; i < Math.max(1, size - 1); i++) {
+            corners.add(new LongLat(hull[i].longitude(), hull[i].latitude()));
         }
-        Line2D.Double line = new Line2D.Double(result.get(resultSize-1).longitude(),result.get(resultSize-1).latitude(),
-                result.get(0).longitude(),result.get(0).latitude());
-        convexHullLines.add(line);
+        return corners;
     }
 
     /**
-     * Checks the orientation of 3 points, that value2 is counter-clockwise for these points.
+     * Checks the orientation of 3 points.
      *
-     * @param value1 the 1st value to get checked
-     * @param value2 the 2nd value to get checked
-     * @param value3 the 3rd value to get checked
-     * @return true if value2 is most counter-clockwise
+     * @param value1 the 1st point
+     * @param value2 the 2nd point
+     * @param value3 the 3rd point
+     * @return a positive number if the points turn counter-clockwise, a negative number if they
+     * turn clockwise, and 0 if they are in a line
      */
-    private static boolean Orientation(Point value1, Point value2, Point value3) {
-        double check = (value2.latitude() - value1.latitude()) * (value3.longitude() - value2.longitude()) -
-                (value2.longitude() - value1.longitude()) * (value3.latitude() - value2.latitude());
-        return check < 0;
+    private static double cross(Point value1, Point value2, Point value3) {
+        return (value2.longitude() - value1.longitude()) * (value3.latitude() - value1.latitude()) -
+                (value2.latitude() - value1.latitude()) * (value3.longitude() - value1.longitude());
     }
 
     /**
@@ -133,28 +224,304 @@ public class Path {
      * @return an ArrayList containing all the orders which were successfully delivered
      */
     public ArrayList<Order> generatePath() {
+        begin();
+        while (deliverNext()) {
+            // each call collects and delivers one order
+        }
+        return finish();
+    }
+
+    /**
+     * Starts generating the path incrementally. It calculates the total cost for the orders made,
+     * and plans the sequence of orders if the order sequencer is used. The orders are then collected
+     * and delivered one at a time with deliverNext, and orders may be added or cancelled in between,
+     * until finish is called. Each of these methods may be called from a different thread, and
+     * they wait for each other.
+     */
+    public synchronized void begin() {
+        long planningStart = System.nanoTime();
         for (Order order: orders) {
             totalCost += order.getCost();
         }
-        boolean outOfMoves;
-        while (!orders.isEmpty()) {
-            currentOrder = chooseOrder();
+        started = true;
+        if (optimiseSequence) {
+            replan();
+        }
+        metrics.addTime(Metrics.PLANNING, System.nanoTime() - planningStart);
+    }
+
+    /**
+     * Collects and delivers the next order. If orders have been added or cancelled since the
+     * sequence was planned, only the rest of the day is planned again first, from where the drone is
+     * and with the moves which are left.
+     *
+     * @return true if an order was delivered and the drone has moves left for more, false if there
+     * is no order to deliver now or the drone has run out of moves
+     */
+    public synchronized boolean deliverNext() {
+        if (outOfMoves || orders.isEmpty()) {
+            return false;
+        }
+        long planningStart = System.nanoTime();
+        try {
+            if (replanNeeded) {
+                replan();
+            }
+            currentOrder = nextOrder();
+            if (currentOrder == null) {
+                return false;
+            }
+            long orderStart = System.nanoTime();
+            int movesBefore = flightpath.size();
             outOfMoves = getOrder(currentOrder);
             if (outOfMoves) {
-                break;
+                return false;
             }
             outOfMoves = deliverOrder(currentOrder);
+            metrics.recordOrder(currentOrder.orderNo, System.nanoTime() - orderStart,
+                    flightpath.size() - movesBefore);
             deliveredCost += currentOrder.getCost();
             delivered.add(currentOrder);
             orders.remove(currentOrder);
-            if (outOfMoves) {
-                break;
-            }
+            return !outOfMoves;
+        } finally {
+            metrics.addTime(Metrics.PLANNING, System.nanoTime() - planningStart);
         }
+    }
+
+    /**
+     * Finishes the path, returning the drone to Appleton Tower.
+     *
+     * @return an ArrayList containing all the orders which were successfully delivered
+     */
+    public synchronized ArrayList<Order> finish() {
+        long planningStart = System.nanoTime();
         endDeliveries();
+        finished = true;
+        metrics.addTime(Metrics.PLANNING, System.nanoTime() - planningStart);
         return delivered;
     }
 
+    /**
+     * Adds an order which arrived after the path was started. If the order sequencer is used, the
+     * rest of the day is planned again before the next order is delivered, reusing the costs of
+     * the legs already planned.
+     *
+     * @param order the new order
+     * @throws IllegalStateException if the path has already been finished
+     */
+    public synchronized void addOrder(Order order) {
+        if (finished) {
+            throw new IllegalStateException("Orders cannot be added once the path is finished");
+        }
+        orders.add(order);
+        orderCount++;
+        if (started) {
+            totalCost += order.getCost();
+            replanNeeded = optimiseSequence;
+        }
+    }
+
+    /**
+     * Cancels an order which has not yet been collected. If the order sequencer is used, the rest
+     * of the day is planned again before the next order is delivered, so the moves it would
+     * have taken can be used for other orders.
+     *
+     * @param orderNo the order number of the order to cancel
+     * @return true if the order was cancelled, false if it has already been delivered or is unknown
+     */
+    public synchronized boolean cancelOrder(String orderNo) {
+        for (Order order : orders) {
+            if (order.orderNo.equals(orderNo)) {
+                orders.remove(order);
+                orderCount--;
+                if (started) {
+                    totalCost -= order.getCost();
+                    replanNeeded = optimiseSequence;
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Plans the sequence of the orders which are left with the order sequencer.
+     */
+    private void replan() {
+        long sequencingStart = System.nanoTime();
+        plannedOrders = new ArrayList<>(sequenceOrders());
+        replanNeeded = false;
+        metrics.addTime(Metrics.SEQUENCING, System.nanoTime() - sequencingStart);
+    }
+
+    /**
+     * Sets the registry the timings of planning and the counters of the hot paths are recorded in.
+     * It should be set before the path is generated.
+     *
+     * @param registry the registry to record in
+     */
+    public void setMetrics(Metrics registry) {
+        metrics = registry;
+        validMoveTests = metrics.counter(Metrics.VALID_MOVE_TESTS);
+        findMoveCandidates = metrics.counter(Metrics.FIND_MOVE_CANDIDATES);
+        routeCacheHits = metrics.counter(Metrics.ROUTE_CACHE_HITS);
+        routeCacheMisses = metrics.counter(Metrics.ROUTE_CACHE_MISSES);
+        noFlyIndex.setIntersectionCounter(metrics.counter(Metrics.INTERSECTION_TESTS));
+    }
+
+    /**
+     * Sets whether the orders are sequenced by the order sequencer, which plans the whole day's
+     * deliveries up front to deliver the most money's worth of orders within the moves available,
+     * instead of repeatedly choosing the most expensive remaining order.
+     *
+     * @param optimise true to use the order sequencer
+     */
+    public void setOptimiseSequence(boolean optimise) {
+        optimiseSequence = optimise;
+    }
+
+    /**
+     * Sets whether the summary of the day is printed when the path is finished. Paths planned at
+     * the same time, such as the drones of a fleet, turn it off and print their summaries together
+     * once they are all finished, so the lines do not interleave.
+     *
+     * @param print true to print the summary
+     */
+    public void setPrintSummary(boolean print) {
+        printSummary = print;
+    }
+
+    /**
+     * @return the delivered and total cost, the percentages of income and of orders delivered and
+     * the number of moves, one per line, or null if the path has not been finished
+     */
+    public String getSummary() {
+        return summary;
+    }
+
+    /**
+     * Sets the cache of legs the path looks up before planning a leg, and adds the legs it plans
+     * to. The same cache may be given to several paths, so that legs planned for one day or one
+     * drone are reused by the others.
+     *
+     * @param cache the cache of legs, or null to plan every leg
+     */
+    public void setRouteCache(RouteCache cache) {
+        routeCache = cache;
+    }
+
+    /**
+     * Sets how many moves ahead findMove looks when choosing each move. With a depth of 1 the move
+     * which gets closest to the goal is chosen. With a greater depth, a beam search looks that many
+     * moves ahead from each possible first move, and the first move of the best sequence is chosen,
+     * so the drone does not run into a dead end along the edge of a hull.
+     *
+     * @param depth the number of moves to look ahead, at least 1
+     * @throws IllegalArgumentException if the depth is less than 1
+     */
+    public void setLookaheadDepth(int depth) {
+        if (depth < 1) {
+            throw new IllegalArgumentException("The lookahead depth must be at least 1");
+        }
+        lookaheadDepth = depth;
+    }
+
+    /**
+     * Plans the sequence of the remaining orders to deliver with the order sequencer, starting from
+     * the drone's current position. Orders which the move estimator shows cannot fit within the
+     * moves left are left out before any legs are planned for them.
+     *
+     * @return a List of the orders to deliver, in the sequence they should be delivered
+     */
+    private List<Order> sequenceOrders() {
+        List<Order> candidates = OrderSequencer.withinBudget(orders, moveEstimator::lowerBound, currentLoc,
+                appletonTower, shopLocations, remainingBudget());
+        Set<Order> kept = new HashSet<>(candidates);
+        for (Order order : orders) {
+            if (!kept.contains(order) && prunedOrders.add(order.orderNo)) {
+                metrics.counter(Metrics.ORDERS_PRUNED).increment();
+            }
+        }
+        return sequencerFor(candidates).sequence(candidates);
+    }
+
+    /**
+     * Creates the order sequencer for the rest of the day. It starts from the drone's current
+     * position, its budget is the moves left, and the cost of each leg is looked up in the day's
+     * table of leg costs, extended with the delivery points of any orders added since.
+     *
+     * @param candidates the orders which may be delivered
+     * @return an OrderSequencer for the rest of the day
+     */
+    OrderSequencer sequencerFor(List<Order> candidates) {
+        return new OrderSequencer(getLegCosts(candidates), currentLoc, appletonTower, shopLocations,
+                remainingBudget());
+    }
+
+    /**
+     * @return the moves left for deliveries, leaving out the moves already made and the moves kept
+     * in reserve by checkMoves
+     */
+    private double remainingBudget() {
+        return MAX_MOVES - 100 - flightpath.size();
+    }
+
+    /**
+     * Gets the table of the moves needed for each leg between the shops, the delivery points of the
+     * orders and Appleton Tower, planning every leg in parallel the first time it is needed. Legs
+     * which cannot be planned are estimated from the length of the shortest route around the
+     * no-fly zone in the visibility graph. When orders have been added since, the table is extended
+     * with their delivery points, and only the legs to and from those points are planned.
+     *
+     * @return a LegCostMatrix containing the moves for each leg
+     */
+    public LegCostMatrix getLegCosts() {
+        return getLegCosts(orders);
+    }
+
+    /**
+     * Gets the table of leg costs as in getLegCosts, including the delivery points of only some of
+     * the orders.
+     *
+     * @param candidates the orders whose delivery points must be in the table
+     * @return a LegCostMatrix containing the moves for each leg
+     */
+    private LegCostMatrix getLegCosts(List<Order> candidates) {
+        if (legCosts != null) {
+            ArrayList<LongLat> added = new ArrayList<>();
+            for (Order order : candidates) {
+                if (legCosts.indexOf(order.getDeliverTo()) == -1) {
+                    added.add(order.getDeliverTo());
+                }
+            }
+            if (!added.isEmpty()) {
+                legCosts = new LegCostMatrix(legCosts, legPlanner, added, ForkJoinPool.commonPool());
+            }
+        } else {
+            ArrayList<LongLat> deliveries = new ArrayList<>();
+            for (Order order : candidates) {
+                deliveries.add(order.getDeliverTo());
+            }
+            LegCost estimate = (from, to) ->
+                    Math.ceil(visibilityGraph.routeLength(from, to) / LongLat.MOVE_LENGTH);
+            legCosts = new LegCostMatrix(legPlanner, new ArrayList<>(shopLocations.values()), deliveries,
+                    appletonTower, estimate);
+        }
+        return legCosts;
+    }
+
+    /**
+     * @return the next order to be collected and delivered, either the next in the planned
+     * sequence or the one picked by chooseOrder, or null if the planned sequence is finished
+     */
+    private Order nextOrder() {
+        if (plannedOrders == null) {
+            return chooseOrder();
+        }
+        return plannedOrders.isEmpty() ? null : plannedOrders.remove(0);
+    }
+
     /**
      * Chooses the next order to be collected and delivered by the drone. It chooses whichever order
      * has the highest monetary value out of the remaining orders, in order to maximise the amount
@@ -182,31 +549,38 @@ public class Path {
      * Appleton Tower. It then outputs the delivered cost and the total cost, as well as the percentage
      * of the total cost that was successfully delivered, and the percentage of orders which were
      * successfully delivered. It also outputs the total number of moves made during the day's operations.
+     * The summary is kept, and is only printed if printing it has not been turned off.
      */
     private void endDeliveries() {
         currentOrder = new Order(null);
         findGoal(appletonTower);
-        System.out.println("delivered: " + deliveredCost);
-        System.out.println("total: " + totalCost);
-        System.out.println("percentage income: " + (deliveredCost/totalCost)*100 + "%");
-        System.out.println("percentage deliveries: " + (delivered.size()/orderCount)*100 + "%");
-        System.out.println("moves: " + moves.size());
+        summary = String.join(System.lineSeparator(),
+                "delivered: " + deliveredCost,
+                "total: " + totalCost,
+                "percentage income: " + (deliveredCost/totalCost)*100 + "%",
+                "percentage deliveries: " + (delivered.size()/orderCount)*100 + "%",
+                "moves: " + flightpath.size());
+        if (printSummary) {
+            System.out.println(summary);
+        }
     }
 
     /**
-     * Collects items of the current order from the respective shops. For each item in the order,
-     * it finds the shop closest to the current location and moves towards it until it is close to it.
-     * It then hovers at the shop to collect the item, and updates the moves to reflect this. It
-     * then checks if the drone needs to return to Appleton tower.
+     * Collects items of the current order from the respective shops. If the orders are sequenced by
+     * the order sequencer, the shops are visited in the order the sequencer costed the order with,
+     * and otherwise it finds the shop closest to the current location each time. It moves towards
+     * the shop until it is close to it, then hovers at the shop to collect the item, and updates the
+     * moves to reflect this. It then checks if the drone needs to return to Appleton tower.
      *
      * @param currentOrder the current order which is being collected
      * @return a boolean stating whether the drone must finish deliveries
      */
     private boolean getOrder(Order currentOrder) {
         boolean noMoves = false;
-        ArrayList<String> shops = new ArrayList<>(currentOrder.getShopList());
+        List<String> planned = plannedOrders == null ? null : currentOrder.getShopSequence();
+        ArrayList<String> shops = new ArrayList<>(planned != null ? planned : currentOrder.getShopList());
         while (!shops.isEmpty()) {
-            String currentShop = closestShop(shops);
+            String currentShop = planned != null ? shops.get(0) : closestShop(shops);
             LongLat goal = shopLocations.get(currentShop);
             findGoal(goal);
             currentLoc = currentLoc.nextPosition(-999);
@@ -257,22 +631,112 @@ public class Path {
      * @return a boolean stating whether the drone must finish deliveries
      */
     private boolean checkMoves() {
-        return (1500 - moves.size()) <= 100;
+        return (MAX_MOVES - flightpath.size()) <= 100;
 
     }
 
     /**
-     * Finds the most advantageous goal for the drone to aim for. If the direct path
-     * to the next goal passes over the no-fly zone, it instead moves towards the closest
-     * landmark to the current goal, and then moves to the goal instead.
+     * Finds the most advantageous goal for the drone to aim for. If the route cache has a leg from
+     * the same cell to the goal which can be flown from the current location, the drone follows
+     * it. Otherwise the fewest moves to the goal are searched for with the leg planner, and if a
+     * leg is found it is added to the cache and the drone follows it. Otherwise the
+     * shortest route to the goal is looked up in the visibility graph, and the drone moves towards
+     * each point on the route in turn. If the graph has no route either, and the direct path to the
+     * next goal passes over the no-fly zone, it instead moves towards the closest landmark to the
+     * current goal, and then moves to the goal.
      *
      * @param goal a LongLat containing the current goal the drone needs to get to
      */
     private void findGoal(LongLat goal) {
-        if (!validMove(currentLoc,goal)) {
-            moveToGoal(closestLandmark(goal));
+        int[] leg = cachedLeg(goal);
+        if (leg == null) {
+            leg = legPlanner.plan(currentLoc, goal);
+            if (leg != null && routeCache != null) {
+                routeCache.put(currentLoc, goal, leg);
+            }
+        }
+        if (leg != null) {
+            followLeg(leg);
+            return;
+        }
+        List<LongLat> route = visibilityGraph.route(currentLoc, goal);
+        if (route == null) {
+            if (!validMove(currentLoc,goal)) {
+                moveToGoal(closestLandmark(goal));
+            }
+            moveToGoal(goal);
+            return;
+        }
+        for (LongLat waypoint : route) {
+            moveToGoal(waypoint);
+        }
+    }
+
+    /**
+     * Looks up a leg from the current location to a goal in the route cache. The leg may have been
+     * planned from elsewhere in the same cell, so each move is checked from the current location,
+     * and the leg is only used if every move is valid and it ends close to the goal. A leg which
+     * cannot be flown is removed, so it is replaced by the leg planned instead.
+     *
+     * @param goal the position the leg must end close to
+     * @return an array of the angles of each move in the leg, or null if there is none which can be flown
+     */
+    private int[] cachedLeg(LongLat goal) {
+        if (routeCache == null) {
+            return null;
+        }
+        int[] leg = routeCache.get(currentLoc, goal);
+        if (leg != null) {
+            LongLat end = replayLeg(leg);
+            if (end != null && end.closeTo(goal)) {
+                routeCacheHits.increment();
+                return leg;
+            }
+            routeCache.remove(currentLoc, goal);
+        }
+        routeCacheMisses.increment();
+        return null;
+    }
+
+    /**
+     * Replays the moves of a leg from the current location without making them, checking that each
+     * move is valid.
+     *
+     * @param leg the angles of each move in the leg
+     * @return a LongLat containing where the leg ends, or null if any move is not valid
+     */
+    private LongLat replayLeg(int[] leg) {
+        double lon = currentLoc.longitude;
+        double lat = currentLoc.latitude;
+        for (int angle : leg) {
+            int direction = angle / 10;
+            double nextLon = lon + LongLat.STEP_LONGITUDE[direction];
+            double nextLat = lat + LongLat.STEP_LATITUDE[direction];
+            if (!validMove(lon, lat, nextLon, nextLat)) {
+                return null;
+            }
+            lon = nextLon;
+            lat = nextLat;
+        }
+        return new LongLat(lon, lat);
+    }
+
+    /**
+     * Makes each move of a leg found by the leg planner, updating the current location and
+     * the moves to reflect each move being made. Like moveToGoal, it stops once the drone has
+     * made as many moves as it can in a day, even if the leg is not finished.
+     *
+     * @param leg the angles of each move in the leg
+     */
+    private void followLeg(int[] leg) {
+        for (int angle : leg) {
+            if (flightpath.size() >= MAX_MOVES) {
+                return;
+            }
+            LongLat newMove = currentLoc.nextPosition(angle);
+            updateMoves(currentLoc,newMove,angle);
+            currentLoc = newMove;
         }
-        moveToGoal(goal);
     }
 
     /**
@@ -293,66 +757,214 @@ public class Path {
 
     /**
      * While the drone is not close to the goal, it updates the current location
-     * to the best move found to get to the goal.
+     * to the best move found to get to the goal. It stops once the drone has made as many
+     * moves as it can in a day, so it always finishes even if the drone cannot reach the goal.
      *
      * @param goal a LongLat containing the current goal
      */
     private void moveToGoal (LongLat goal) {
-        while (!currentLoc.closeTo(goal)) {
+        while (!currentLoc.closeTo(goal) && flightpath.size() < MAX_MOVES) {
             currentLoc = findMove(goal);
         }
     }
 
     /**
-     * Finds the best move from the current location towards the current goal. It tests each possible
-     * angle between 0 and 360, chooses the one which gets the closest to the goal, and updates the
-     * moves to reflect the move being made.
+     * Finds the best move from the current location towards the current goal, and updates the
+     * moves to reflect the move being made. If no move is valid the drone stays where it is.
      *
      * @param goal the current goal
      * @return a LongLat containing the new move
      */
     private LongLat findMove(LongLat goal) {
-        int angle;
+        int chosenDirection = bestDirection(currentLoc, goal);
         LongLat newMove = currentLoc;
-        LongLat testMove;
         int chosenAngle = 0;
-        double minDist = Double.POSITIVE_INFINITY;
-        for (int i = 0; i < 36; i++) {
-            angle = i*10;
-            testMove = currentLoc.nextPosition(angle);
-            if (validMove(currentLoc,testMove) & (testMove.distanceTo(goal) < minDist)) {
-                minDist = testMove.distanceTo(goal);
-                newMove = testMove;
-                chosenAngle = angle;
-            }
+        if (chosenDirection != -1) {
+            newMove = new LongLat(currentLoc.longitude + LongLat.STEP_LONGITUDE[chosenDirection],
+                    currentLoc.latitude + LongLat.STEP_LATITUDE[chosenDirection]);
+            chosenAngle = chosenDirection * 10;
         }
         updateMoves(currentLoc,newMove,chosenAngle);
         return newMove;
     }
 
+    /**
+     * Finds the best direction to move in from a location towards a goal, either greedily or by
+     * looking ahead, depending on the lookahead depth.
+     *
+     * @param from the location the move starts at
+     * @param goal the current goal
+     * @return the angle of the best valid move divided by 10, or -1 if no move is valid
+     */
+    int bestDirection(LongLat from, LongLat goal) {
+        return lookaheadDepth == 1 ? greedyDirection(from, goal) : lookaheadDirection(from, goal);
+    }
+
+    /**
+     * Finds the direction to move in from a location which gets the closest to a goal. It tests
+     * each possible angle between 0 and 360 and chooses the one which gets the closest to the goal.
+     * The candidate moves are scored directly on their coordinates using the precomputed offsets
+     * for each angle, so no LongLat is created for them.
+     *
+     * @param from the location the move starts at
+     * @param goal the current goal
+     * @return the angle of the best valid move divided by 10, or -1 if no move is valid
+     */
+    private int greedyDirection(LongLat from, LongLat goal) {
+        double startLon = from.longitude;
+        double startLat = from.latitude;
+        int chosenDirection = -1;
+        double minDist = Double.POSITIVE_INFINITY;
+        findMoveCandidates.add(LongLat.DIRECTIONS);
+        for (int i = 0; i < LongLat.DIRECTIONS; i++) {
+            double testLon = startLon + LongLat.STEP_LONGITUDE[i];
+            double testLat = startLat + LongLat.STEP_LATITUDE[i];
+            double lonDiff = testLon - goal.longitude;
+            double latDiff = testLat - goal.latitude;
+            double dist = lonDiff * lonDiff + latDiff * latDiff;
+            if (dist < minDist && validMove(startLon, startLat, testLon, testLat)) {
+                minDist = dist;
+                chosenDirection = i;
+            }
+        }
+        return chosenDirection;
+    }
+
+    /**
+     * Finds the direction to move in from a location by looking ahead. Each valid first move is
+     * scored by a beam search from where it ends, run for every first move in parallel, and the
+     * first move with the best score is chosen. Ties are broken by how close the first move gets to
+     * the goal, so the choice does not depend on the order the scores are found in.
+     *
+     * @param from the location the move starts at
+     * @param goal the current goal
+     * @return the angle of the best valid move divided by 10, or -1 if no move is valid
+     */
+    private int lookaheadDirection(LongLat from, LongLat goal) {
+        double startLon = from.longitude;
+        double startLat = from.latitude;
+        double[] scores = new double[LongLat.DIRECTIONS];
+        findMoveCandidates.add(LongLat.DIRECTIONS);
+        IntStream.range(0, LongLat.DIRECTIONS).parallel().forEach(i -> {
+            double testLon = startLon + LongLat.STEP_LONGITUDE[i];
+            double testLat = startLat + LongLat.STEP_LATITUDE[i];
+            scores[i] = validMove(startLon, startLat, testLon, testLat)
+                    ? lookahead(testLon, testLat, goal) : Double.POSITIVE_INFINITY;
+        });
+        int chosenDirection = -1;
+        double chosenDist = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < LongLat.DIRECTIONS; i++) {
+            if (scores[i] == Double.POSITIVE_INFINITY) {
+                continue;
+            }
+            double dist = squaredDistance(startLon + LongLat.STEP_LONGITUDE[i],
+                    startLat + LongLat.STEP_LATITUDE[i], goal);
+            if (chosenDirection == -1 || scores[i] < scores[chosenDirection]
+                    || (scores[i] == scores[chosenDirection] && dist < chosenDist)) {
+                chosenDirection = i;
+                chosenDist = dist;
+            }
+        }
+        return chosenDirection;
+    }
+
+    /**
+     * Scores the location a first move ends at with a beam search. At each step every valid move
+     * from the locations in the beam is tried, and the BEAM_WIDTH which get closest to the goal
+     * are kept for the next step. The score is the square of the smallest distance to the goal
+     * reached within the lookahead depth. Reaching the goal scores below any distance, and
+     * reaching it in fewer moves scores lower still.
+     *
+     * @param lon  the longitude the first move ends at
+     * @param lat  the latitude the first move ends at
+     * @param goal the current goal
+     * @return the score of the first move, where lower is better
+     */
+    private double lookahead(double lon, double lat, LongLat goal) {
+        double[] beamLon = {lon};
+        double[] beamLat = {lat};
+        double best = squaredDistance(lon, lat, goal);
+        for (int step = 1; step < lookaheadDepth; step++) {
+            if (best < LongLat.MOVE_LENGTH * LongLat.MOVE_LENGTH) {
+                return step - lookaheadDepth - 1;
+            }
+            double[] nextLon = new double[BEAM_WIDTH];
+            double[] nextLat = new double[BEAM_WIDTH];
+            double[] nextDist = new double[BEAM_WIDTH];
+            int kept = 0;
+            findMoveCandidates.add((long) beamLon.length * LongLat.DIRECTIONS);
+            for (int b = 0; b < beamLon.length; b++) {
+                for (int i = 0; i < LongLat.DIRECTIONS; i++) {
+                    double testLon = beamLon[b] + LongLat.STEP_LONGITUDE[i];
+                    double testLat = beamLat[b] + LongLat.STEP_LATITUDE[i];
+                    double dist = squaredDistance(testLon, testLat, goal);
+                    if ((kept < BEAM_WIDTH || dist < nextDist[kept - 1])
+                            && validMove(beamLon[b], beamLat[b], testLon, testLat)) {
+                        int slot = Math.min(kept, BEAM_WIDTH - 1);
+                        while (slot > 0 && nextDist[slot - 1] > dist) {
+                            nextLon[slot] = nextLon[slot - 1];
+                            nextLat[slot] = nextLat[slot - 1];
+                            nextDist[slot] = nextDist[slot - 1];
+                            slot--;
+                        }
+                        nextLon[slot] = testLon;
+                        nextLat[slot] = testLat;
+                        nextDist[slot] = dist;
+                        kept = Math.min(kept + 1, BEAM_WIDTH);
+                    }
+                }
+            }
+            if (kept == 0) {
+                break;
+            }
+            best = Math.min(best, nextDist[0]);
+            beamLon = Arrays.copyOf(nextLon, kept);
+            beamLat = Arrays.copyOf(nextLat, kept);
+        }
+        return best < LongLat.MOVE_LENGTH * LongLat.MOVE_LENGTH ? -1 : best;
+    }
+
+    /**
+     * @param lon  the longitude of a location
+     * @param lat  the latitude of a location
+     * @param goal the current goal
+     * @return the square of the distance from the location to the goal
+     */
+    private static double squaredDistance(double lon, double lat, LongLat goal) {
+        double lonDiff = lon - goal.longitude;
+        double latDiff = lat - goal.latitude;
+        return lonDiff * lonDiff + latDiff * latDiff;
+    }
+
     /**
      * Checks whether a move is within in the confinement area, and does not cross the convex
-     * hull created around the no-fly zone.
+     * hulls created around the no-fly zone.
      *
      * @param currentLoc the current location of the drone
      * @param newLoc     the prospective move being checked
      * @return a boolean stating whether the move is valid or not
      */
     private boolean validMove(LongLat currentLoc, LongLat newLoc) {
-        boolean valid = true;
-        Line2D.Double plannedMove = new Line2D.Double(currentLoc.longitude,
-                currentLoc.latitude,newLoc.longitude,newLoc.latitude);
-
-        for (Line2D.Double line : convexHullLines) {
-            if (plannedMove.intersectsLine(line)) {
-                valid = false;
-            }
-        }
+        return validMove(currentLoc.longitude, currentLoc.latitude, newLoc.longitude, newLoc.latitude);
+    }
 
-        if (!newLoc.isConfined()) {
-            valid = false;
+    /**
+     * Checks whether a move given by its coordinates is within the confinement area, and does not
+     * cross the convex hulls created around the no-fly zone. The hull lines near the move are found
+     * using the spatial index, and it returns as soon as the move is found to be invalid.
+     *
+     * @param startLon the longitude the move starts at
+     * @param startLat the latitude the move starts at
+     * @param endLon   the longitude the move ends at
+     * @param endLat   the latitude the move ends at
+     * @return a boolean stating whether the move is valid or not
+     */
+    boolean validMove(double startLon, double startLat, double endLon, double endLat) {
+        validMoveTests.increment();
+        if (!LongLat.isConfined(endLon, endLat)) {
+            return false;
         }
-        return valid;
+        return !noFlyIndex.intersects(startLon, startLat, endLon, endLat);
     }
 
     /**
@@ -362,16 +974,24 @@ public class Path {
         Feature feature;
         FeatureCollection pathFeatures;
 
-        feature = Feature.fromGeometry(LineString.fromLngLats(movesLines));
+        feature = Feature.fromGeometry(LineString.fromLngLats(flightpath.asPoints()));
         pathFeatures = FeatureCollection.fromFeature(feature);
         return pathFeatures;
     }
 
     /**
-     * @return an ArrayList of Moves describing the flightpath of the drone
+     * @return a Flightpath describing the moves made by the drone
      */
-    public ArrayList<Move> getFlightpath() {
-        return moves;
+    public Flightpath getFlightpath() {
+        return flightpath;
+    }
+
+    /**
+     * @return the MoveEstimator giving a lower bound and an estimate of the moves of each leg
+     * around the no-fly zone
+     */
+    public MoveEstimator getMoveEstimator() {
+        return moveEstimator;
     }
 
     /**
@@ -396,16 +1016,33 @@ public class Path {
     }
 
     /**
-     * Adds a move to both the list of lines representing the moves made by the drone, and
-     * the list of moves made.
+     * Writes the flightpath to the GeoJSON file for the day, streaming the coordinates straight
+     * from the moves made instead of building the whole feature collection first.
+     *
+     * @param writer the writer used to create the file
+     * @param day    the day of deliveries
+     * @param month  the month of deliveries
+     * @param year   the year of deliveries
+     */
+    public void writeGeoJSON(GeoJsonWriter writer, String day, String month, String year) {
+        long writeStart = System.nanoTime();
+        try {
+            writer.write(writer.fileFor(day, month, year), flightpath);
+        } catch (IOException e) {
+            System.out.println("An error occurred.");
+            e.printStackTrace();
+        }
+        metrics.addTime(Metrics.GEOJSON_WRITE, System.nanoTime() - writeStart);
+    }
+
+    /**
+     * Adds a move to the flightpath of the drone.
      *
      * @param firstLoc the location where the drone began the move
      * @param secondLoc the location where the drone ended the move
      * @param angle the angle the move was made at
      */
     public void updateMoves(LongLat firstLoc, LongLat secondLoc,int angle) {
-        movesLines.add(Point.fromLngLat(firstLoc.longitude, firstLoc.latitude));
-        movesLines.add(Point.fromLngLat(secondLoc.longitude, secondLoc.latitude));
-        moves.add(new Move(currentOrder.orderNo,firstLoc,angle,secondLoc));
+        flightpath.add(currentOrder.orderNo,firstLoc,angle,secondLoc);
     }
 }
\ No newline at end of file
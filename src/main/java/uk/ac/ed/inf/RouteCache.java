@@ -0,0 +1,147 @@
+package uk.ac.ed.inf;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache of the legs found by the leg planner, so that a leg flown again, such as from
+ * Appleton Tower or between two shops which are often visited together, does not need to be
+ * searched for again. Each leg is kept under the cell its start falls in, as in the leg planner,
+ * together with the quantized goal, and holds the angles of each move. When the cache is full the
+ * leg used least recently is evicted. The cache may be shared by several paths planned at once,
+ * such as the drones of a fleet or the days of a batch.
+ */
+public class RouteCache {
+    /** the width and height of the cells the start of each leg is grouped into, in degrees */
+    private final double cellSize;
+    /** each leg in the cache, ordered from the least to the most recently used */
+    private final LinkedHashMap<Key, int[]> legs;
+
+    /**
+     * Constructor for RouteCache class, grouping the starts of legs into the same cells as the
+     * leg planner.
+     *
+     * @param capacity the most legs kept in the cache
+     */
+    public RouteCache(int capacity) {
+        this(capacity, LegPlanner.DEFAULT_CELL_SIZE);
+    }
+
+    /**
+     * Constructor for RouteCache class.
+     *
+     * @param capacity the most legs kept in the cache
+     * @param cellSize the width and height of the cells the start of each leg is grouped into, in degrees
+     */
+    public RouteCache(int capacity, double cellSize) {
+        this.cellSize = cellSize;
+        legs = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, int[]> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Looks up a leg starting in the same cell as a position and ending at a goal. The leg was
+     * planned from somewhere else in the cell, so it should be checked before it is flown.
+     *
+     * @param from the position the leg starts at
+     * @param goal the position the leg must end close to
+     * @return an array of the angles of each move in the leg, or null if it is not in the cache
+     */
+    public synchronized int[] get(LongLat from, LongLat goal) {
+        return legs.get(key(from, goal));
+    }
+
+    /**
+     * Adds a leg to the cache, evicting the leg used least recently if the cache is full.
+     *
+     * @param from the position the leg starts at
+     * @param goal the position the leg ends close to
+     * @param leg  the angles of each move in the leg
+     */
+    public synchronized void put(LongLat from, LongLat goal, int[] leg) {
+        legs.put(key(from, goal), leg);
+    }
+
+    /**
+     * Removes a leg which could not be flown from the cache.
+     *
+     * @param from the position the leg starts at
+     * @param goal the position the leg must end close to
+     */
+    public synchronized void remove(LongLat from, LongLat goal) {
+        legs.remove(key(from, goal));
+    }
+
+    /**
+     * @return the number of legs in the cache
+     */
+    public synchronized int size() {
+        return legs.size();
+    }
+
+    /**
+     * @param from the position the leg starts at
+     * @param goal the position the leg must end close to
+     * @return the key the leg is kept under
+     */
+    private Key key(LongLat from, LongLat goal) {
+        return new Key((long) Math.floor(from.longitude / cellSize), (long) Math.floor(from.latitude / cellSize),
+                goal.getLongitudeUnits(), goal.getLatitudeUnits());
+    }
+
+    /**
+     * The cell a leg starts in and the goal it ends at.
+     */
+    private static final class Key {
+        /** the column of the cell the leg starts in */
+        private final long column;
+        /** the row of the cell the leg starts in */
+        private final long row;
+        /** the longitude of the goal in units */
+        private final long goalLongitude;
+        /** the latitude of the goal in units */
+        private final long goalLatitude;
+
+        /**
+         * @param column        the column of the cell the leg starts in
+         * @param row           the row of the cell the leg starts in
+         * @param goalLongitude the longitude of the goal in units
+         * @param goalLatitude  the latitude of the goal in units
+         */
+        private Key(long column, long row, long goalLongitude, long goalLatitude) {
+            this.column = column;
+            this.row = row;
+            this.goalLongitude = goalLongitude;
+            this.goalLatitude = goalLatitude;
+        }
+
+        /**
+         * @param other another object
+         * @return true if the other object is a Key with the same cell and goal
+         */
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) other;
+            return column == key.column && row == key.row && goalLongitude == key.goalLongitude
+                    && goalLatitude == key.goalLatitude;
+        }
+
+        /**
+         * @return a hash code of the cell and goal
+         */
+        @Override
+        public int hashCode() {
+            int hash = Long.hashCode(column);
+            hash = 31 * hash + Long.hashCode(row);
+            hash = 31 * hash + Long.hashCode(goalLongitude);
+            return 31 * hash + Long.hashCode(goalLatitude);
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package uk.ac.ed.inf;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A visibility graph over the map the drone flies in, used to plan routes around the no-fly zone.
+ * Its nodes are the corners of the no-fly zone, pushed slightly outwards so the drone can pass
+ * them without touching the zone, together with the landmarks, shops and Appleton Tower. Two nodes
+ * are joined if the drone can fly in a straight line between them. The shortest route between every
+ * pair of nodes is found once when the graph is built, so planning a route between two points only
+ * needs to connect them to the nodes they can see and look up the best route between those nodes.
+ */
+public class VisibilityGraph {
+    /** the default distance the corners of the no-fly zone are pushed outwards by, in degrees */
+    public static final double DEFAULT_CLEARANCE = 2 * LongLat.MOVE_LENGTH;
+
+    /** the spatial index over the no-fly zone, used to check whether two points can see each other */
+    private final NoFlyIndex noFlyIndex;
+    /** the nodes of the graph */
+    private final List<LongLat> nodes = new ArrayList<>();
+    /** the length of the shortest route between each pair of nodes, infinite if there is none */
+    private final double[][] routeLength;
+    /** the node which follows the first node on the shortest route between each pair of nodes */
+    private final int[][] nextNode;
+
+    /**
+     * Constructor for VisibilityGraph class using the default clearance.
+     *
+     * @param obstacles  the outlines of each part of the no-fly zone, given as lists of corners
+     * @param landmarks  the landmarks, shops and other points the drone may fly via
+     * @param noFlyIndex the spatial index over the edges of the no-fly zone
+     */
+    public VisibilityGraph(List<List<LongLat>> obstacles, List<LongLat> landmarks, NoFlyIndex noFlyIndex) {
+        this(obstacles, landmarks, noFlyIndex, DEFAULT_CLEARANCE);
+    }
+
+    /**
+     * Constructor for VisibilityGraph class. Each corner of the no-fly zone is pushed away from the
+     * centre of its outline by the clearance and added as a node, along with the landmarks. Nodes
+     * which can see each other are joined by an edge with the straight line distance between them,
+     * and the shortest routes between all pairs of nodes are then found with the Floyd-Warshall
+     * algorithm.
+     *
+     * @param obstacles  the outlines of each part of the no-fly zone, given as lists of corners
+     * @param landmarks  the landmarks, shops and other points the drone may fly via
+     * @param noFlyIndex the spatial index over the edges of the no-fly zone
+     * @param clearance  the distance the corners of the no-fly zone are pushed outwards by, in degrees
+     */
+    public VisibilityGraph(List<List<LongLat>> obstacles, List<LongLat> landmarks, NoFlyIndex noFlyIndex,
+                           double clearance) {
+        this.noFlyIndex = noFlyIndex;
+        for (List<LongLat> outline : obstacles) {
+            double centreLon = 0;
+            double centreLat = 0;
+            for (LongLat corner : outline) {
+                centreLon += corner.longitude / outline.size();
+                centreLat += corner.latitude / outline.size();
+            }
+            for (LongLat corner : outline) {
+                double lonDiff = corner.longitude - centreLon;
+                double latDiff = corner.latitude - centreLat;
+                double length = Math.sqrt(lonDiff * lonDiff + latDiff * latDiff);
+                if (length == 0) {
+                    continue;
+                }
+                LongLat node = new LongLat(corner.longitude + lonDiff / length * clearance,
+                        corner.latitude + latDiff / length * clearance);
+                if (node.isConfined()) {
+                    nodes.add(node);
+                }
+            }
+        }
+        nodes.addAll(landmarks);
+
+        int size = nodes.size();
+        routeLength = new double[size][size];
+        nextNode = new int[size][size];
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                nextNode[i][j] = j;
+                if (i == j) {
+                    routeLength[i][j] = 0;
+                } else if (j < i) {
+                    routeLength[i][j] = routeLength[j][i];
+                } else if (canSee(nodes.get(i), nodes.get(j))) {
+                    routeLength[i][j] = nodes.get(i).distanceTo(nodes.get(j));
+                } else {
+                    routeLength[i][j] = Double.POSITIVE_INFINITY;
+                }
+            }
+        }
+        for (int k = 0; k < size; k++) {
+            for (int i = 0; i < size; i++) {
+                for (int j = 0; j < size; j++) {
+                    double viaK = routeLength[i][k] + routeLength[k][j];
+                    if (viaK < routeLength[i][j]) {
+                        routeLength[i][j] = viaK;
+                        nextNode[i][j] = nextNode[i][k];
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks whether the drone could fly in a straight line between two points, which is the case
+     * when both are in the confinement area and the line between them does not cross the no-fly zone.
+     * As the confinement area is a rectangle, the whole line then stays inside it.
+     *
+     * @param from the first point
+     * @param to   the second point
+     * @return true if the drone could fly directly between the points
+     */
+    public boolean canSee(LongLat from, LongLat to) {
+        return from.isConfined() && to.isConfined()
+                && !noFlyIndex.intersects(from.longitude, from.latitude, to.longitude, to.latitude);
+    }
+
+    /**
+     * Finds the shortest route through the graph between two points. If the points can see each
+     * other the route is just the destination, otherwise the start is joined to each node it can
+     * see and the destination to each node which can see it, and the pair of nodes giving the
+     * shortest total route is chosen from the precomputed routes between nodes.
+     *
+     * @param from the point the route starts at
+     * @param to   the point the route ends at
+     * @return a List of the points to fly to in turn, ending with the destination, or null if
+     * there is no route between the points
+     */
+    public List<LongLat> route(LongLat from, LongLat to) {
+        if (canSee(from, to)) {
+            return Collections.singletonList(to);
+        }
+        int size = nodes.size();
+        double[] toEnd = new double[size];
+        List<Integer> startNodes = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            toEnd[i] = canSee(nodes.get(i), to) ? nodes.get(i).distanceTo(to) : Double.POSITIVE_INFINITY;
+            if (canSee(from, nodes.get(i))) {
+                startNodes.add(i);
+            }
+        }
+
+        double shortest = Double.POSITIVE_INFINITY;
+        int first = -1;
+        int last = -1;
+        for (int i : startNodes) {
+            double fromStart = from.distanceTo(nodes.get(i));
+            for (int j = 0; j < size; j++) {
+                double length = fromStart + routeLength[i][j] + toEnd[j];
+                if (length < shortest) {
+                    shortest = length;
+                    first = i;
+                    last = j;
+                }
+            }
+        }
+        if (first == -1) {
+            return null;
+        }
+
+        List<LongLat> route = new ArrayList<>();
+        int current = first;
+        route.add(nodes.get(current));
+        while (current != last) {
+            current = nextNode[current][last];
+            route.add(nodes.get(current));
+        }
+        route.add(to);
+        return route;
+    }
+
+    /**
+     * Finds the length of the shortest route through the graph between two points.
+     *
+     * @param from the point the route starts at
+     * @param to   the point the route ends at
+     * @return the length of the route in degrees, or infinity if there is no route
+     */
+    public double routeLength(LongLat from, LongLat to) {
+        List<LongLat> route = route(from, to);
+        if (route == null) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double length = 0;
+        LongLat previous = from;
+        for (LongLat point : route) {
+            length += previous.distanceTo(point);
+            previous = point;
+        }
+        return length;
+    }
+}
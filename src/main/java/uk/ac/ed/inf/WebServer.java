@@ -4,6 +4,7 @@ import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 import com.mapbox.geojson.*;
 
+import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.Type;
 import java.net.URI;
@@ -11,15 +12,33 @@ import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Contains the functions required for the application to be able to access
  * the web server. It gets the menu items and shop locations from the server,
- * as well as the no-fly zone and landmarks.
+ * as well as the no-fly zone and landmarks. Each file is downloaded once, starting
+ * when the WebServer is created without waiting for it to arrive, and kept as an
+ * unchanging snapshot which the getters wait for, and whatthreewords
+ * addresses are looked up concurrently and remembered once found, in a cache which
+ * is kept on disk between runs. The files can instead be read from a recorded Bundle,
+ * and the files read from the server can be recorded into a new bundle as they arrive.
  */
 public class WebServer {
+    /** the path of the menus on the server */
+    private static final String MENUS_PATH = "/menus/menus.json";
+    /** the path of the no-fly zone on the server */
+    private static final String NO_FLY_ZONES_PATH = "/buildings/no-fly-zones.geojson";
+    /** the path of the landmarks on the server */
+    private static final String LANDMARKS_PATH = "/buildings/landmarks.geojson";
 
     /** the HTTP client used to send requests to the server */
     private final HttpClient client = HttpClient.newHttpClient();
@@ -27,130 +46,245 @@ public class WebServer {
     private final String machineName;
     /** the port which the web server is running on */
     private final String portName;
-    /** each item and its price */
-    private final HashMap<String, Integer> itemMap;
-    /** each item and the shop which sells it */
-    private final HashMap<String, String> shopMap;
-    /** each shop and its location */
-    private final HashMap<String, LongLat> locationMap;
+    /** each whatthreewords address which has been looked up and its coordinates, kept between runs */
+    private final What3WordsCache resolvedWords;
+    /** the bundle the files are read from instead of the server, or null if the server is used */
+    private final Bundle bundle;
+    /** the recorder the files read are written to, or null if they are not recorded */
+    private final BundleRecorder recorder;
+    /** the request for each whatthreewords address which has been sent but not yet answered */
+    private final Map<String, CompletableFuture<LongLat>> requested = new ConcurrentHashMap<>();
+    /** the registry the whatthreewords lookups are counted in */
+    private final Metrics metrics;
+    /** each item and its price, once the menus have been read */
+    private final CompletableFuture<Map<String, Integer>> itemMap;
+    /** each item and the shop which sells it, once the menus have been read */
+    private final CompletableFuture<Map<String, String>> shopMap;
+    /** each shop and its location, once the shops have been looked up */
+    private final CompletableFuture<Map<String, LongLat>> locationMap;
+    /** the outline of each polygon of the no-fly zone, once it has been read */
+    private final CompletableFuture<List<List<Point>>> noFlyPolygons;
+    /** the locations of the landmarks, once they have been read */
+    private final CompletableFuture<List<LongLat>> landmarks;
 
     /**
-     * Constructor for WebServer class.
+     * Constructor for WebServer class using the whatthreewords cache in the default file.
      *
      * @param port specifies the port where the web server is running
      */
     public WebServer(String port) {
+        this(port, new File(What3WordsCache.DEFAULT_FILE));
+    }
+
+    /**
+     * Constructor for WebServer class. The whatthreewords cache is loaded, the menus, no-fly
+     * zone and landmarks start downloading at the same time, and the locations of all the
+     * shops are looked up together once the menus arrive.
+     *
+     * @param port      specifies the port where the web server is running
+     * @param cacheFile the file the whatthreewords cache is kept in
+     */
+    public WebServer(String port, File cacheFile) {
+        this(port, cacheFile, null, null, new Metrics());
+    }
+
+    /**
+     * Constructor for WebServer class which records every file it reads from the server into a
+     * bundle, including the details of every whatthreewords address looked up, even those found
+     * in the cache.
+     *
+     * @param port     specifies the port where the web server is running
+     * @param recorder the recorder the files are written to
+     */
+    public WebServer(String port, BundleRecorder recorder) {
+        this(port, recorder, new Metrics());
+    }
+
+    /**
+     * Constructor for WebServer class using the whatthreewords cache in the default file, which
+     * counts every whatthreewords lookup, including those of the shops made straight away, in a
+     * registry.
+     *
+     * @param port     specifies the port where the web server is running
+     * @param recorder the recorder the files are written to, or null if they are not recorded
+     * @param metrics  the registry the whatthreewords lookups are counted in
+     */
+    public WebServer(String port, BundleRecorder recorder, Metrics metrics) {
+        this(port, new File(What3WordsCache.DEFAULT_FILE), null, recorder, metrics);
+    }
+
+    /**
+     * Constructor for WebServer class which reads every file from a recorded bundle instead of
+     * the server. The whatthreewords cache on disk is not used, so that each replay only depends
+     * on the bundle.
+     *
+     * @param bundle the bundle the files are read from
+     */
+    public WebServer(Bundle bundle) {
+        this(bundle, new Metrics());
+    }
+
+    /**
+     * Constructor for WebServer class which reads every file from a recorded bundle, counting
+     * every whatthreewords lookup in a registry.
+     *
+     * @param bundle  the bundle the files are read from
+     * @param metrics the registry the whatthreewords lookups are counted in
+     */
+    public WebServer(Bundle bundle, Metrics metrics) {
+        this(null, null, bundle, null, metrics);
+    }
+
+    /**
+     * Constructor for WebServer class. The menus, no-fly zone and landmarks start being read at
+     * the same time, and the locations of all the shops are looked up together once the menus
+     * have been read. It returns without waiting for any of them.
+     *
+     * @param port      specifies the port where the web server is running, or null for a bundle
+     * @param cacheFile the file the whatthreewords cache is kept in, or null for no file
+     * @param bundle    the bundle the files are read from, or null to use the server
+     * @param recorder  the recorder the files are written to, or null
+     * @param metrics   the registry the whatthreewords lookups are counted in
+     */
+    private WebServer(String port, File cacheFile, Bundle bundle, BundleRecorder recorder, Metrics metrics) {
         machineName = "localhost";
         portName = port;
-        itemMap = parseMenu();
-        shopMap = parseShops();
-        locationMap = parseShopLocations();
+        this.bundle = bundle;
+        this.recorder = recorder;
+        this.metrics = metrics;
+        resolvedWords = new What3WordsCache(cacheFile);
+        CompletableFuture<ArrayList<Shop>> shops = fetch(MENUS_PATH)
+                .thenApply(menus -> parseMenu(record(MENUS_PATH, menus)));
+        itemMap = shops.thenApply(menu -> Collections.unmodifiableMap(parseItems(menu)));
+        shopMap = shops.thenApply(menu -> Collections.unmodifiableMap(parseShops(menu)));
+        locationMap = shops.thenCompose(this::parseShopLocations);
+        noFlyPolygons = fetch(NO_FLY_ZONES_PATH).thenApply(zones ->
+                Collections.unmodifiableList(parseNoFlyZone(record(NO_FLY_ZONES_PATH, zones))));
+        landmarks = fetch(LANDMARKS_PATH).thenApply(landmarkFile ->
+                Collections.unmodifiableList(parseLandmarks(record(LANDMARKS_PATH, landmarkFile))));
     }
 
     /**
-     * Gets the menu from the web server. It creates a request to the server
-     * and uses getMenu to get the list of shops. It then converts the name
-     * of each item and price to a HashMap, to find prices.
+     * @return a CompletableFuture which completes once the menus have been read, so the shop and
+     * price of each item are known
+     */
+    public CompletableFuture<Void> menusLoaded() {
+        return CompletableFuture.allOf(itemMap, shopMap);
+    }
+
+    /**
+     * @return a CompletableFuture which completes once every file has been read and the locations
+     * of the shops have been looked up, or completes exceptionally if any of them could not be
+     */
+    public CompletableFuture<Void> loaded() {
+        return CompletableFuture.allOf(itemMap, shopMap, locationMap, noFlyPolygons, landmarks);
+    }
+
+    /**
+     * Writes a file to the recorder, if the files read are being recorded.
      *
-     * @return HashMap of the name of each menu item and its price
+     * @param path     the path of the file on the server
+     * @param contents the contents of the file
+     * @return the contents of the file
      */
-    private HashMap<String, Integer> parseMenu() {
-        String urlString = "http://" + machineName +":" + portName + "/menus/menus.json";
-        HttpRequest request = HttpRequest.newBuilder().uri(URI.create(urlString)).build();
-        {
-            try {
-                ArrayList<Shop> shops = getMenu(request);
-                HashMap<String, Integer> menu = new HashMap<>();
-                for (Shop shop: shops) {
-                    for (Shop.Item item: shop.getMenu()) {
-                        menu.put(item.getItem(), item.getPence());
-                    }
-                }
-                return menu;
+    private String record(String path, String contents) {
+        if (recorder != null) {
+            recorder.record(path, contents);
+        }
+        return contents;
+    }
 
-            } catch (IOException | InterruptedException e) {
-                System.err.println("Something went wrong when trying to communicate with server. Please try again.");
-                System.exit(1);
-                return null;
+    /**
+     * Starts downloading a file from the web server without waiting for it to arrive. If the
+     * files are read from a bundle, the file is read from the bundle straight away instead.
+     *
+     * @param path the path of the file on the server
+     * @return a CompletableFuture which completes with the contents of the file, or completes
+     * exceptionally with an IOException if the server does not return it
+     */
+    private CompletableFuture<String> fetch(String path) {
+        if (bundle != null) {
+            try {
+                return CompletableFuture.completedFuture(bundle.read(path));
+            } catch (IOException e) {
+                return CompletableFuture.failedFuture(e);
             }
         }
+        String urlString = "http://" + machineName +":" + portName + path;
+        HttpRequest request = HttpRequest.newBuilder().uri(URI.create(urlString)).build();
+        return client.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+                .thenApply(response -> {
+                    if (response.statusCode() != 200) {
+                        throw new CompletionException(
+                                new IOException("HTTP " + response.statusCode() + " for " + path));
+                    }
+                    return response.body();
+                });
     }
 
     /**
-     * Obtains the list of shops from the menu stored on the server.
-     * @param request the request created for the server
+     * Parses the list of shops from the menu file.
+     *
+     * @param menusInput the contents of the menu file from the server
      * @return an ArrayList of Shops obtained from the menu
-     * @throws IOException if there is an issue with reading from the server
-     * @throws InterruptedException if the process is interrupted and unable to complete
      */
-    private ArrayList<Shop> getMenu(HttpRequest request) throws IOException, InterruptedException {
-        HttpResponse<String> response;
-        String menusInput;
-        response = client.send(request, HttpResponse.BodyHandlers.ofString());
-        if (response.statusCode() != 200) {
-            System.exit(1);
-        }
-        menusInput = response.body();
+    private ArrayList<Shop> parseMenu(String menusInput) {
         Type listType = new TypeToken<ArrayList<Shop>>() {}.getType();
         return new Gson().fromJson(menusInput, listType);
     }
 
     /**
-     * Gets shops from the web server. It creates a request to the server
-     * and uses getMenu to get the list of shops. It then converts the name
-     * of each item and the shop it is sold at into a HashMap, to find where
+     * Converts the name of each item on the menu and its price to a HashMap, to find prices.
+     *
+     * @param shops the shops from the menu
+     * @return HashMap of the name of each menu item and its price
+     */
+    private HashMap<String, Integer> parseItems(ArrayList<Shop> shops) {
+        HashMap<String, Integer> menu = new HashMap<>();
+        for (Shop shop: shops) {
+            for (Shop.Item item: shop.getMenu()) {
+                menu.put(item.getItem(), item.getPence());
+            }
+        }
+        return menu;
+    }
+
+    /**
+     * Converts the name of each item and the shop it is sold at into a HashMap, to find where
      * each item must be collected from.
+     *
+     * @param shops the shops from the menu
      * @return HashMap of the name of each menu item and the shop which sells it
      */
-    private HashMap<String, String> parseShops() {
-        String urlString = "http://" + machineName +":" + portName + "/menus/menus.json";
-        HttpRequest request = HttpRequest.newBuilder().uri(URI.create(urlString)).build();
-        {
-            try {
-                ArrayList<Shop> shops = getMenu(request);
-                HashMap<String, String> shopList = new HashMap<>();
-                for (Shop shop: shops) {
-                    for (Shop.Item item: shop.getMenu()) {
-                        shopList.put(item.getItem(), shop.getShop());
-                    }
-                }
-                return shopList;
-
-            } catch (IOException | InterruptedException e) {
-                System.err.println("Something went wrong when trying to communicate with server. Please try again.");
-                System.exit(1);
-                return null;
+    private HashMap<String, String> parseShops(ArrayList<Shop> shops) {
+        HashMap<String, String> shopList = new HashMap<>();
+        for (Shop shop: shops) {
+            for (Shop.Item item: shop.getMenu()) {
+                shopList.put(item.getItem(), shop.getShop());
             }
         }
+        return shopList;
     }
 
     /**
-     * Gets the locations of the shops from the web server. It creates a request to the server
-     * and uses getMenu to get the list of shops. It converts each shop and the coordinates
-     * of the location in to a HashMap, obtained from the server using the whatthreewords address,
-     * to find the relevant location for each shop. The coordinates are obtained by
-     * parsing the whatthreewords address.
+     * Converts each shop and the coordinates of its location in to a Map, to find the relevant
+     * location for each shop. The whatthreewords addresses of all the shops are looked up together.
      *
-     * @return HashMap of the name of each shop and its location in what three words
+     * @param shops the shops from the menu
+     * @return a CompletableFuture which completes with the name of each shop and its location
      */
-    private HashMap<String, LongLat> parseShopLocations() {
-        String urlString = "http://" + machineName +":" + portName + "/menus/menus.json";
-        HttpRequest request = HttpRequest.newBuilder().uri(URI.create(urlString)).build();
-        {
-            try {
-                ArrayList<Shop> shops = getMenu(request);
-                HashMap<String, LongLat> shopW3W = new HashMap<>();
-                for (Shop shop: shops) {
-                    shopW3W.put(shop.getShop(), parseWhatThreeWords(shop.getLocation()));
-                }
-                return shopW3W;
-
-            } catch (IOException | InterruptedException e) {
-                System.err.println("Something went wrong when trying to communicate with server. Please try again.");
-                System.exit(1);
-                return null;
-            }
+    private CompletableFuture<Map<String, LongLat>> parseShopLocations(ArrayList<Shop> shops) {
+        ArrayList<String> addresses = new ArrayList<>();
+        for (Shop shop: shops) {
+            addresses.add(shop.getLocation());
         }
+        return resolveWhatThreeWordsAsync(addresses).thenApply(locations -> {
+            HashMap<String, LongLat> shopW3W = new HashMap<>();
+            for (Shop shop: shops) {
+                shopW3W.put(shop.getShop(), locations.get(shop.getLocation()));
+            }
+            return Collections.unmodifiableMap(shopW3W);
+        });
     }
 
     /**
@@ -158,140 +292,210 @@ public class WebServer {
      * It connects to the web server with the specified name and at the specified
      * port, and gets the json file at the address defined by the whatthreewords
      * address. It parses the file into the What3Words class to get the coordinates.
+     * Addresses which have already been looked up are not requested again.
      *
      * @param whatthreewords the whatthreewords address
      * @return LongLat containing the coordinates for this location
      */
     public LongLat parseWhatThreeWords(String whatthreewords) {
-        /*
-        turning the w3w into a longlat
-        */
-        String[] w3wParts = whatthreewords.split("\\.");
-        String urlString = "http://" + machineName +":" + portName + "/words/" + w3wParts[0] + "/" +
-                w3wParts[1] + "/" + w3wParts[2] + "/details.json";
-        String w3wInput;
-        HttpRequest request = HttpRequest.newBuilder().uri(URI.create(urlString)).build();
-        HttpResponse<String> response;
+        return resolveWhatThreeWords(List.of(whatthreewords)).get(whatthreewords);
+    }
+
+    /**
+     * Gets the locations of several whatthreewords addresses from the web server, waiting for
+     * them all to arrive, as described in resolveWhatThreeWordsAsync.
+     *
+     * @param addresses the whatthreewords addresses, which may contain repeats
+     * @return a Map of each address and the coordinates for its location
+     */
+    public Map<String, LongLat> resolveWhatThreeWords(Collection<String> addresses) {
+        return resolveWhatThreeWordsAsync(addresses).join();
+    }
 
-        try {
-            response = client.send(request, HttpResponse.BodyHandlers.ofString());
-            if (response.statusCode() != 200) {
-                System.exit(1);
+    /**
+     * Gets the locations of several whatthreewords addresses from the web server without waiting
+     * for them. Each distinct address which is not already in the cache is requested, and all the
+     * requests are sent at the same time. An address which is already being requested, such as by
+     * another day or drone planned at the same time, waits for that request instead of sending
+     * its own.
+     *
+     * @param addresses the whatthreewords addresses, which may contain repeats
+     * @return a CompletableFuture which completes with each address and the coordinates for its
+     * location, or completes exceptionally if any address could not be looked up
+     */
+    public CompletableFuture<Map<String, LongLat>> resolveWhatThreeWordsAsync(Collection<String> addresses) {
+        HashMap<String, CompletableFuture<LongLat>> pending = new HashMap<>();
+        for (String address : new LinkedHashSet<>(addresses)) {
+            // a finished request is cached before it is removed, so checking in this order misses neither
+            CompletableFuture<LongLat> request = requested.get(address);
+            LongLat cached = resolvedWords.get(address);
+            if (request == null && cached != null) {
+                pending.put(address, CompletableFuture.completedFuture(cached));
+                metrics.counter(Metrics.WORDS_CACHED).increment();
+            } else {
+                pending.put(address, request == null ? request(address) : request);
             }
-            w3wInput = response.body();
-            Type listType = new TypeToken<What3Words>() {}.getType();
-            What3Words what3words = new Gson().fromJson(w3wInput, listType);
-            return new LongLat(what3words.getCoordinates());
-
-        } catch (IOException | InterruptedException e) {
-            System.err.println("Something went wrong when trying to communicate with server. Please try again.");
-            System.exit(1);
-            return null;
         }
-
+        return CompletableFuture.allOf(pending.values().toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+            HashMap<String, LongLat> locations = new HashMap<>();
+            for (String address : addresses) {
+                locations.put(address, pending.get(address).join());
+            }
+            if (recorder != null) {
+                for (Map.Entry<String, LongLat> location : locations.entrySet()) {
+                    recorder.recordWords(wordsPath(location.getKey()), location.getValue());
+                }
+            }
+            return locations;
+        });
     }
 
     /**
-     * Gets the location of the no-fly zone from the web server. It connects to the web
-     * server with the specified name at the specified port, and gets the json file
-     * containing the GeoJSON features of the no-fly zone. It converts each feature into
-     * polygons, and then creates a list of all of the points which define the no-fly zone.
+     * Sends a request for a whatthreewords address, unless one is already being sent. Once the
+     * location arrives it is added to the cache, and the request is forgotten whether it
+     * succeeded or not, so a failed request can be sent again.
      *
-     * @return a List of Lists of points outlining the no-fly zone
+     * @param address the whatthreewords address
+     * @return a CompletableFuture which completes with the coordinates for the location of the address
      */
-    public ArrayList<Point> parseNoFlyZone() {
-        String urlString = "http://" + machineName +":" + portName + "/buildings/no-fly-zones.geojson";
-        String mapInput;
-        HttpRequest request = HttpRequest.newBuilder().uri(URI.create(urlString)).build();
-        HttpResponse<String> response;
-
-        try {
-            response = client.send(request, HttpResponse.BodyHandlers.ofString());
-            if (response.statusCode() != 200) {
-                System.exit(1);
+    private CompletableFuture<LongLat> request(String address) {
+        CompletableFuture<LongLat> request = new CompletableFuture<>();
+        CompletableFuture<LongLat> existing = requested.putIfAbsent(address, request);
+        if (existing != null) {
+            return existing;
+        }
+        metrics.counter(Metrics.WORDS_REQUESTED).increment();
+        fetch(wordsPath(address)).thenApply(this::parseWords).whenComplete((location, failure) -> {
+            if (failure == null) {
+                resolvedWords.put(address, location);
+            }
+            requested.remove(address);
+            if (failure == null) {
+                request.complete(location);
+            } else {
+                request.completeExceptionally(failure);
             }
-            mapInput = response.body();
-            List<Feature> features = FeatureCollection.fromJson(mapInput).features();
+        });
+        return request;
+    }
 
-            ArrayList<Polygon> polygons = new ArrayList<>();
+    /**
+     * Saves the whatthreewords addresses looked up during this run to the cache file,
+     * so that later runs do not need to request them from the server.
+     */
+    public void flushCache() {
+        resolvedWords.flush();
+    }
 
-            assert features != null;
-            for (Feature feature: features) {
-                polygons.add((Polygon)feature.geometry());
-            }
+    /**
+     * @param whatthreewords the whatthreewords address
+     * @return the path of the details file for the address on the server
+     */
+    private static String wordsPath(String whatthreewords) {
+        String[] w3wParts = whatthreewords.split("\\.");
+        return "/words/" + w3wParts[0] + "/" + w3wParts[1] + "/" + w3wParts[2] + "/details.json";
+    }
 
-            ArrayList<Point> coordinates = new ArrayList<>();
-            for (Polygon polygon : polygons) {
-                coordinates.addAll(polygon.coordinates().get(0));
-            }
+    /**
+     * @param w3wInput the contents of a whatthreewords details file
+     * @return LongLat containing the coordinates in the file
+     */
+    private LongLat parseWords(String w3wInput) {
+        Type listType = new TypeToken<What3Words>() {}.getType();
+        What3Words what3words = new Gson().fromJson(w3wInput, listType);
+        return new LongLat(what3words.getCoordinates());
+    }
 
-            return coordinates;
+    /**
+     * Parses the no-fly zone from its GeoJSON file. It converts each feature into
+     * polygons, and then creates a list of the points outlining each polygon.
+     *
+     * @param mapInput the contents of the no-fly zone file from the server
+     * @return a List of the points outlining each polygon of the no-fly zone
+     */
+    private ArrayList<List<Point>> parseNoFlyZone(String mapInput) {
+        List<Feature> features = FeatureCollection.fromJson(mapInput).features();
+
+        ArrayList<Polygon> polygons = new ArrayList<>();
 
-        } catch (IOException | InterruptedException e) {
-            System.err.println("Something went wrong when trying to communicate with server. Please try again.");
-            System.exit(1);
-            return null;
+        assert features != null;
+        for (Feature feature: features) {
+            polygons.add((Polygon)feature.geometry());
         }
+
+        ArrayList<List<Point>> outlines = new ArrayList<>();
+        for (Polygon polygon : polygons) {
+            outlines.add(Collections.unmodifiableList(polygon.coordinates().get(0)));
+        }
+
+        return outlines;
     }
 
     /**
-     * Gets the location of the landmarks from the web server. It connects to the web
-     * server with the specified name at the specified port, and gets the json file
-     * containing the GeoJSON features of the no-fly zone. It then creates a new LongLat
+     * Parses the landmarks from their GeoJSON file. It creates a new LongLat
      * from the points contained in each feature.
      *
+     * @param mapInput the contents of the landmarks file from the server
      * @return a List of LongLats representing the locations of the landmarks
      */
-    public ArrayList<LongLat> parseLandmarks() {
-        String urlString = "http://" + machineName +":" + portName + "/buildings/landmarks.geojson";
-        String mapInput;
-        HttpRequest request = HttpRequest.newBuilder().uri(URI.create(urlString)).build();
-        HttpResponse<String> response;
-        final ArrayList<LongLat> landmarks = new ArrayList<>();
-
-        try {
-            response = client.send(request, HttpResponse.BodyHandlers.ofString());
-            if (response.statusCode() != 200) {
-                System.exit(1);
-            }
-            mapInput = response.body();
+    private ArrayList<LongLat> parseLandmarks(String mapInput) {
+        final ArrayList<LongLat> landmarkList = new ArrayList<>();
+        List<Feature> features = FeatureCollection.fromJson(mapInput).features();
+
+        assert features != null;
+        for (Feature feature: features) {
+            Point point = ((Point)feature.geometry());
+            assert point != null;
+            landmarkList.add(new LongLat(point.longitude(), point.latitude()));
+        }
 
-            List<Feature> features = FeatureCollection.fromJson(mapInput).features();
+        return landmarkList;
+    }
 
-            assert features != null;
-            for (Feature feature: features) {
-                Point point = ((Point)feature.geometry());
-                assert point != null;
-                landmarks.add(new LongLat(point.longitude(), point.latitude()));
-            }
+    /**
+     * @return a List of all of the points which define the no-fly zone
+     */
+    public ArrayList<Point> getNoFlyZone() {
+        ArrayList<Point> points = new ArrayList<>();
+        for (List<Point> polygon : getNoFlyPolygons()) {
+            points.addAll(polygon);
+        }
+        return points;
+    }
 
-            return landmarks;
+    /**
+     * @return a List of the points outlining each polygon of the no-fly zone, in the order of
+     * the features in the file
+     */
+    public List<List<Point>> getNoFlyPolygons() {
+        return noFlyPolygons.join();
+    }
 
-        } catch (IOException | InterruptedException e) {
-            System.err.println("Something went wrong when trying to communicate with server. Please try again.");
-            System.exit(1);
-            return null;
-        }
+    /**
+     * @return a List of LongLats representing the locations of the landmarks
+     */
+    public ArrayList<LongLat> getLandmarks() {
+        return new ArrayList<>(landmarks.join());
     }
 
     /**
-     * @return a HashMap containing each item and its shop
+     * @return a Map containing each item and its shop
      */
-    public HashMap<String, String> getShopMap() {
-        return shopMap;
+    public Map<String, String> getShopMap() {
+        return shopMap.join();
     }
 
     /**
-     * @return a HashMap containing each shop and its location
+     * @return a Map containing each shop and its location
      */
-    public HashMap<String, LongLat> getLocationMap() {
-        return locationMap;
+    public Map<String, LongLat> getLocationMap() {
+        return locationMap.join();
     }
 
     /**
-     * @return a HashMap containing each item and its price
+     * @return a Map containing each item and its price
      */
-    public HashMap<String, Integer> getItemMap() {
-        return itemMap;
+    public Map<String, Integer> getItemMap() {
+        return itemMap.join();
     }
 }
@@ -0,0 +1,134 @@
+package uk.ac.ed.inf;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * A cache of the coordinates of whatthreewords addresses which is kept on disk between runs.
+ * The cache file is an append-only log with one address per line, followed by its longitude,
+ * latitude and a checksum of the rest of the line, separated by tabs. It is read when the cache is
+ * created, and addresses looked up during the run are appended to it when the cache is flushed, so
+ * later runs do not need to ask the web server for them again.
+ */
+public class What3WordsCache {
+    /** the name of the file the cache is kept in if none is given */
+    public static final String DEFAULT_FILE = "w3w-cache.tsv";
+
+    /** the file the cache is kept in */
+    private final File file;
+    /** each address in the cache and its coordinates */
+    private final Map<String, LongLat> locations = new ConcurrentHashMap<>();
+    /** the addresses added since the cache was last flushed, and their coordinates */
+    private final Map<String, LongLat> unsaved = new LinkedHashMap<>();
+
+    /**
+     * Constructor for What3WordsCache class. It reads every address already saved in the file,
+     * if the file exists. Only lines ending in a newline whose checksum matches are used, so a
+     * line left unfinished by an interrupted run, even one cut off part way through a number, is
+     * skipped without stopping the rest of the cache being used.
+     *
+     * @param cacheFile the file the cache is kept in, or null to keep the cache in memory only
+     */
+    public What3WordsCache(File cacheFile) {
+        file = cacheFile;
+        if (file == null || !file.exists()) {
+            return;
+        }
+        String contents;
+        try {
+            contents = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            System.err.println("Could not read the whatthreewords cache, addresses will be requested from the server.");
+            return;
+        }
+        // anything after the last newline was not finished
+        String[] lines = contents.substring(0, contents.lastIndexOf('\n') + 1).split("\n");
+        for (String line : lines) {
+            String[] parts = line.split("\t");
+            if (parts.length != 4 || !parts[3].equals(checksum(parts[0] + "\t" + parts[1] + "\t" + parts[2]))) {
+                continue;
+            }
+            try {
+                locations.put(parts[0], new LongLat(Double.parseDouble(parts[1]), Double.parseDouble(parts[2])));
+            } catch (NumberFormatException e) {
+                // skip the damaged line
+            }
+        }
+    }
+
+    /**
+     * @param entry an address and its longitude and latitude, separated by tabs
+     * @return the CRC-32 checksum of the entry in hexadecimal
+     */
+    private static String checksum(String entry) {
+        CRC32 crc = new CRC32();
+        crc.update(entry.getBytes(StandardCharsets.UTF_8));
+        return Long.toHexString(crc.getValue());
+    }
+
+    /**
+     * @param address a whatthreewords address
+     * @return a LongLat containing the coordinates of the address, or null if it is not cached
+     */
+    public LongLat get(String address) {
+        return locations.get(address);
+    }
+
+    /**
+     * Adds an address to the cache. It is saved to the file the next time the cache is flushed.
+     *
+     * @param address  a whatthreewords address
+     * @param location the coordinates of the address
+     */
+    public synchronized void put(String address, LongLat location) {
+        if (locations.putIfAbsent(address, location) == null) {
+            unsaved.put(address, location);
+        }
+    }
+
+    /**
+     * Appends every address added since the last flush to the cache file, each with its checksum.
+     * If the file ends in a line left unfinished by an interrupted run, the new lines are started
+     * on a line of their own, so the unfinished line does not damage the first of them.
+     */
+    public synchronized void flush() {
+        if (file == null || unsaved.isEmpty()) {
+            return;
+        }
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file, true))) {
+            if (endsUnfinished()) {
+                writer.write('\n');
+            }
+            for (Map.Entry<String, LongLat> entry : unsaved.entrySet()) {
+                String line = entry.getKey() + "\t" + entry.getValue().longitude + "\t" + entry.getValue().latitude;
+                writer.write(line + "\t" + checksum(line) + "\n");
+            }
+            unsaved.clear();
+        } catch (IOException e) {
+            System.err.println("Could not save the whatthreewords cache.");
+        }
+    }
+
+    /**
+     * @return true if the cache file is not empty and does not end in a newline
+     * @throws IOException if the file cannot be read
+     */
+    private boolean endsUnfinished() throws IOException {
+        try (RandomAccessFile cache = new RandomAccessFile(file, "r")) {
+            if (cache.length() == 0) {
+                return false;
+            }
+            cache.seek(cache.length() - 1);
+            return cache.read() != '\n';
+        }
+    }
+}
@@ -0,0 +1,329 @@
+package uk.ac.ed.inf;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests streaming a day's orders from the database and from a bundle, with the menus and the
+ * whatthreewords addresses read from a bundle. The database is a driver which answers the order
+ * query with fixed rows and records which of its result sets and connections have been closed.
+ */
+public class DatabaseStreamTest {
+    /** the prefix of the connection strings the test driver accepts */
+    private static final String JDBC_PREFIX = "jdbc:stream-test:";
+    /** the addresses the orders are delivered to, and their coordinates */
+    private static final String[][] ADDRESSES = {
+            {"army.monks.grapes", "-3.186874", "55.944494"},
+            {"blocks.found.civic", "-3.191594", "55.943658"},
+            {"sketch.spill.puzzle", "-3.188396", "55.945064"}};
+    /** the number of orders, more than fit in the window read ahead */
+    private static final int ORDER_COUNT = Database.STREAM_WINDOW * 2 + 3;
+    /** the test driver, registered while the tests run */
+    private static FixedRowsDriver driver;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * A driver which answers every query with the rows it was given, and counts the result sets
+     * and connections it opens and closes.
+     */
+    private static class FixedRowsDriver implements Driver {
+        /** the order number, delivery address and item of each row, in the order they are returned */
+        List<String[]> rows = new ArrayList<>();
+        /** the last query run */
+        String query;
+        /** the number of result sets opened and not yet closed */
+        int openResultSets;
+        /** the number of connections opened and not yet closed */
+        int openConnections;
+
+        @Override
+        public Connection connect(String url, Properties info) {
+            if (!acceptsURL(url)) {
+                return null;
+            }
+            openConnections++;
+            boolean[] closed = {false};
+            return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "prepareStatement":
+                                query = (String) args[0];
+                                return statement();
+                            case "getAutoCommit":
+                                return true;
+                            case "isClosed":
+                                return closed[0];
+                            case "close":
+                                if (!closed[0]) {
+                                    closed[0] = true;
+                                    openConnections--;
+                                }
+                                return null;
+                            default:
+                                return null;
+                        }
+                    });
+        }
+
+        /**
+         * @return a statement whose query returns the rows
+         */
+        private PreparedStatement statement() {
+            return (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class}, (proxy, method, args) ->
+                            method.getName().equals("executeQuery") ? resultSet() : null);
+        }
+
+        /**
+         * @return a result set over the rows
+         */
+        private ResultSet resultSet() {
+            openResultSets++;
+            int[] row = {-1};
+            boolean[] closed = {false};
+            return (ResultSet) Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class<?>[]{ResultSet.class}, (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "next":
+                                row[0]++;
+                                return row[0] < rows.size();
+                            case "getString":
+                                String[] current = rows.get(row[0]);
+                                return current[List.of("orderNo", "deliverTo", "item").indexOf(args[0])];
+                            case "close":
+                                if (!closed[0]) {
+                                    closed[0] = true;
+                                    openResultSets--;
+                                }
+                                return null;
+                            default:
+                                return null;
+                        }
+                    });
+        }
+
+        @Override
+        public boolean acceptsURL(String url) {
+            return url.startsWith(JDBC_PREFIX);
+        }
+
+        @Override
+        public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+            return new DriverPropertyInfo[0];
+        }
+
+        @Override
+        public int getMajorVersion() {
+            return 1;
+        }
+
+        @Override
+        public int getMinorVersion() {
+            return 0;
+        }
+
+        @Override
+        public boolean jdbcCompliant() {
+            return false;
+        }
+
+        @Override
+        public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+            throw new SQLFeatureNotSupportedException();
+        }
+    }
+
+    @BeforeClass
+    public static void registerDriver() throws SQLException {
+        driver = new FixedRowsDriver();
+        DriverManager.registerDriver(driver);
+    }
+
+    @AfterClass
+    public static void deregisterDriver() throws SQLException {
+        DriverManager.deregisterDriver(driver);
+    }
+
+    /**
+     * @param bundle the directory of the bundle
+     * @param path   the path of the file in the bundle
+     * @param text   the contents of the file
+     * @throws IOException if the file cannot be written
+     */
+    private static void write(File bundle, String path, String text) throws IOException {
+        File file = new File(bundle, path);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param bundle  the directory of the bundle
+     * @param address the whatthreewords address
+     * @param lng     the longitude of the address
+     * @param lat     the latitude of the address
+     * @throws IOException if the file cannot be written
+     */
+    private static void writeWords(File bundle, String address, String lng, String lat) throws IOException {
+        String[] words = address.split("\\.");
+        write(bundle, "words/" + words[0] + "/" + words[1] + "/" + words[2] + "/details.json",
+                "{\"words\": \"" + address + "\", \"coordinates\": {\"lng\": " + lng + ", \"lat\": " + lat + "}}");
+    }
+
+    /**
+     * Writes a bundle with two shops, each selling one item, and the details of every address.
+     *
+     * @return the directory of the bundle
+     * @throws IOException if the bundle cannot be written
+     */
+    private File writeBundle() throws IOException {
+        File bundle = folder.newFolder("bundle");
+        write(bundle, "menus/menus.json", "["
+                + "{\"name\": \"Soup\", \"location\": \"army.monks.grapes\","
+                + " \"menu\": [{\"item\": \"Broth\", \"pence\": 400}]},"
+                + "{\"name\": \"Bakery\", \"location\": \"blocks.found.civic\","
+                + " \"menu\": [{\"item\": \"Bun\", \"pence\": 150}]}]");
+        for (String[] address : ADDRESSES) {
+            writeWords(bundle, address[0], address[1], address[2]);
+        }
+        return bundle;
+    }
+
+    /**
+     * @param order the index of an order
+     * @return the order number of the order, which sort in the order of their indices
+     */
+    private static String orderNo(int order) {
+        return String.format("o%07d", order);
+    }
+
+    /**
+     * @param order the index of an order
+     * @return the rows of the order, a bun and for every other order a broth as well
+     */
+    private static List<String[]> rows(int order) {
+        String address = ADDRESSES[order % ADDRESSES.length][0];
+        List<String[]> rows = new ArrayList<>();
+        rows.add(new String[]{orderNo(order), address, "Bun"});
+        if (order % 2 == 0) {
+            rows.add(new String[]{orderNo(order), address, "Broth"});
+        }
+        return rows;
+    }
+
+    /**
+     * @return the rows of every order, sorted by order number
+     */
+    private static List<String[]> sortedRows() {
+        List<String[]> rows = new ArrayList<>();
+        for (int order = 0; order < ORDER_COUNT; order++) {
+            rows.addAll(rows(order));
+        }
+        return rows;
+    }
+
+    /**
+     * Checks every order was streamed in order of order number, with its shops, cost and delivery point.
+     *
+     * @param orders the orders streamed
+     */
+    private static void assertHydratedInOrder(List<Order> orders) {
+        assertEquals(ORDER_COUNT, orders.size());
+        for (int order = 0; order < ORDER_COUNT; order++) {
+            Order streamed = orders.get(order);
+            assertEquals(orderNo(order), streamed.orderNo);
+            String[] address = ADDRESSES[order % ADDRESSES.length];
+            assertEquals(address[0], streamed.getDeliveryAddress());
+            assertEquals(Double.parseDouble(address[1]), streamed.getDeliverTo().longitude, 0);
+            assertEquals(Double.parseDouble(address[2]), streamed.getDeliverTo().latitude, 0);
+            if (order % 2 == 0) {
+                assertEquals(List.of("Bun", "Broth"), streamed.items);
+                assertEquals(Set.of("Bakery", "Soup"), streamed.getShopList());
+                assertEquals(50 + 150 + 400, streamed.getCost());
+            } else {
+                assertEquals(List.of("Bun"), streamed.items);
+                assertEquals(Set.of("Bakery"), streamed.getShopList());
+                assertEquals(50 + 150, streamed.getCost());
+            }
+        }
+    }
+
+    @Test
+    public void streamsDatabaseOrdersHydratedAndClosesOnceConsumed() throws Exception {
+        driver.rows = sortedRows();
+        WebServer server = new WebServer(new Bundle(writeBundle()));
+        try (ConnectionPool pool = new ConnectionPool(JDBC_PREFIX + "orders", 0)) {
+            Database database = new Database("01", "01", "2022", pool);
+            try (Stream<Order> stream = database.streamOrders(server)) {
+                assertTrue(driver.query.endsWith("order by orders.orderNo"));
+                assertEquals(1, driver.openResultSets);
+                assertEquals(1, driver.openConnections);
+                List<Order> orders = stream.collect(Collectors.toList());
+                assertEquals(0, driver.openResultSets);
+                assertEquals(0, driver.openConnections);
+                assertHydratedInOrder(orders);
+            }
+        }
+    }
+
+    @Test
+    public void closingStreamEarlyClosesResultSetAndConnection() throws Exception {
+        driver.rows = sortedRows();
+        WebServer server = new WebServer(new Bundle(writeBundle()));
+        try (ConnectionPool pool = new ConnectionPool(JDBC_PREFIX + "orders", 0)) {
+            Database database = new Database("01", "01", "2022", pool);
+            try (Stream<Order> stream = database.streamOrders(server)) {
+                assertEquals(orderNo(0), stream.findFirst().orElseThrow().orderNo);
+                assertEquals(1, driver.openConnections);
+            }
+            assertEquals(0, driver.openResultSets);
+            assertEquals(0, driver.openConnections);
+        }
+    }
+
+    @Test
+    public void streamsBundleOrdersSortedByOrderNumber() throws Exception {
+        File bundle = writeBundle();
+        StringBuilder recorded = new StringBuilder();
+        for (int order = ORDER_COUNT - 1; order >= 0; order--) {
+            for (String[] row : rows(order)) {
+                recorded.append(String.join("\t", row)).append('\n');
+            }
+        }
+        write(bundle, Bundle.ordersPath("01", "01", "2022").substring(1), recorded.toString());
+        WebServer server = new WebServer(new Bundle(bundle));
+        Database database = new Database("01", "01", "2022", new Bundle(bundle));
+        try (Stream<Order> stream = database.streamOrders(server)) {
+            List<Order> orders = stream.collect(Collectors.toList());
+            assertHydratedInOrder(orders);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package uk.ac.ed.inf;
+
+import com.mapbox.geojson.Point;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the parallel arrays of Flightpath and the views of its moves and points.
+ */
+public class FlightpathTest {
+    /** the point the test flightpaths start at, Appleton Tower */
+    private static final LongLat START = new LongLat(-3.186874, 55.944494);
+
+    /**
+     * Flies the drone in a square spiral, so every angle of a multiple of 90 degrees is used.
+     *
+     * @param moves the number of moves to make
+     * @return a flightpath of the moves, each made for order "order-N" where N is the move index / 100
+     */
+    private static Flightpath spiral(int moves) {
+        Flightpath flightpath = new Flightpath();
+        LongLat current = START;
+        for (int move = 0; move < moves; move++) {
+            int angle = (move / 3 % 4) * 90;
+            LongLat next = current.nextPosition(angle);
+            flightpath.add(move == moves - 1 ? null : "order-" + move / 100, current, angle, next);
+            current = next;
+        }
+        return flightpath;
+    }
+
+    @Test
+    public void newFlightpathIsEmpty() {
+        Flightpath flightpath = new Flightpath();
+        assertTrue(flightpath.isEmpty());
+        assertEquals(0, flightpath.size());
+        assertEquals(0, flightpath.asMoves().size());
+        assertEquals(0, flightpath.asPoints().size());
+    }
+
+    @Test
+    public void movesBeyondInitialCapacityAreKept() {
+        Flightpath flightpath = spiral(1000);
+        assertEquals(1000, flightpath.size());
+        LongLat current = START;
+        for (int move = 0; move < 1000; move++) {
+            assertEquals(current.longitude, flightpath.getLongitude(move), 0);
+            assertEquals(current.latitude, flightpath.getLatitude(move), 0);
+            assertEquals((move / 3 % 4) * 90, flightpath.getAngle(move));
+            current = current.nextPosition(flightpath.getAngle(move));
+        }
+        assertEquals(current.longitude, flightpath.getLongitude(1000), 0);
+        assertEquals(current.latitude, flightpath.getLatitude(1000), 0);
+    }
+
+    @Test
+    public void orderNumbersAreKeptForEachMove() {
+        Flightpath flightpath = spiral(300);
+        assertEquals("order-0", flightpath.getOrderNo(0));
+        assertEquals("order-1", flightpath.getOrderNo(150));
+        assertEquals("order-2", flightpath.getOrderNo(298));
+        assertNull(flightpath.getOrderNo(299));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void moveNotStartingWhereThePreviousEndedIsRejected() {
+        Flightpath flightpath = spiral(3);
+        LongLat elsewhere = new LongLat(-3.1913, 55.9456);
+        flightpath.add("order-0", elsewhere, 0, elsewhere.nextPosition(0));
+    }
+
+    @Test
+    public void moveViewMatchesTheArrays() {
+        Flightpath flightpath = spiral(400);
+        List<Move> moves = flightpath.asMoves();
+        assertEquals(400, moves.size());
+        for (int index = 0; index < moves.size(); index++) {
+            Move move = moves.get(index);
+            assertEquals(flightpath.getOrderNo(index), move.orderNo);
+            assertEquals(flightpath.getAngle(index), move.angle);
+            assertEquals(flightpath.getLongitude(index), move.startPoint.longitude, 0);
+            assertEquals(flightpath.getLatitude(index), move.startPoint.latitude, 0);
+            assertEquals(flightpath.getLongitude(index + 1), move.endPoint.longitude, 0);
+            assertEquals(flightpath.getLatitude(index + 1), move.endPoint.latitude, 0);
+        }
+    }
+
+    @Test
+    public void pointViewHasOneMorePointThanMoves() {
+        Flightpath flightpath = spiral(400);
+        List<Point> points = flightpath.asPoints();
+        assertEquals(401, points.size());
+        for (int index = 0; index < points.size(); index++) {
+            assertEquals(flightpath.getLongitude(index), points.get(index).longitude(), 0);
+            assertEquals(flightpath.getLatitude(index), points.get(index).latitude(), 0);
+        }
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void moveViewRejectsIndexPastTheEnd() {
+        spiral(10).asMoves().get(10);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void pointViewRejectsIndexPastTheEnd() {
+        spiral(10).asPoints().get(11);
+    }
+}
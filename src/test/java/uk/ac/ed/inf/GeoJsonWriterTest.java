@@ -0,0 +1,146 @@
+package uk.ac.ed.inf;
+
+import com.mapbox.geojson.Feature;
+import com.mapbox.geojson.FeatureCollection;
+import com.mapbox.geojson.LineString;
+import com.mapbox.geojson.Point;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests that the files written by GeoJsonWriter are read back by the Mapbox library as the
+ * points of the flightpath, rounded to the precision.
+ */
+public class GeoJsonWriterTest {
+    /** a folder for the files written, deleted after each test */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * @param start the point the flightpath starts at
+     * @param moves the number of moves to make
+     * @return a flightpath turning by 10 degrees after every move
+     */
+    private static Flightpath flightpath(LongLat start, int moves) {
+        Flightpath flightpath = new Flightpath();
+        LongLat current = start;
+        for (int move = 0; move < moves; move++) {
+            int angle = move * 10 % 360;
+            LongLat next = current.nextPosition(angle);
+            flightpath.add("order", current, angle, next);
+            current = next;
+        }
+        return flightpath;
+    }
+
+    /**
+     * @param file the file to read
+     * @param gzip whether the file is compressed with gzip
+     * @return the features in the file
+     * @throws IOException if the file cannot be read
+     */
+    private static List<Feature> read(File file, boolean gzip) throws IOException {
+        try (InputStream input = gzip ? new GZIPInputStream(new FileInputStream(file)) : new FileInputStream(file)) {
+            return FeatureCollection.fromJson(new String(input.readAllBytes(), StandardCharsets.UTF_8)).features();
+        }
+    }
+
+    /**
+     * Checks that a feature holds every point of a flightpath, rounded to a number of decimal places.
+     *
+     * @param flightpath the flightpath which was written
+     * @param feature    the feature read back
+     * @param precision  the number of decimal places written
+     */
+    private static void assertPoints(Flightpath flightpath, Feature feature, int precision) {
+        List<Point> points = ((LineString) feature.geometry()).coordinates();
+        double tolerance = 0.5 / Math.pow(10, precision) + 1e-12;
+        assertEquals(flightpath.size() + 1, points.size());
+        for (int point = 0; point < points.size(); point++) {
+            assertEquals(flightpath.getLongitude(point), points.get(point).longitude(), tolerance);
+            assertEquals(flightpath.getLatitude(point), points.get(point).latitude(), tolerance);
+        }
+    }
+
+    @Test
+    public void writtenPointsAreReadBack() throws IOException {
+        Flightpath flightpath = flightpath(new LongLat(-3.186874, 55.944494), 500);
+        File file = folder.newFile("drone.geojson");
+        new GeoJsonWriter().write(file, flightpath);
+        List<Feature> features = read(file, false);
+        assertEquals(1, features.size());
+        assertPoints(flightpath, features.get(0), GeoJsonWriter.DEFAULT_PRECISION);
+    }
+
+    @Test
+    public void smallBufferAndLowPrecisionAreReadBack() throws IOException {
+        Flightpath flightpath = flightpath(new LongLat(-3.186874, 55.944494), 200);
+        File file = folder.newFile("drone.geojson");
+        new GeoJsonWriter(3, false, 64).write(file, flightpath);
+        assertPoints(flightpath, read(file, false).get(0), 3);
+    }
+
+    @Test
+    public void compressedFileIsReadBack() throws IOException {
+        Flightpath flightpath = flightpath(new LongLat(-3.186874, 55.944494), 300);
+        GeoJsonWriter writer = new GeoJsonWriter(GeoJsonWriter.DEFAULT_PRECISION, true, 1024);
+        File file = new File(folder.getRoot(), writer.fileFor("01", "01", "2022").getName());
+        writer.write(file, flightpath);
+        assertEquals("drone-01-01-2022.geojson.gz", file.getName());
+        assertPoints(flightpath, read(file, true).get(0), GeoJsonWriter.DEFAULT_PRECISION);
+    }
+
+    @Test
+    public void coordinatesAroundZeroKeepTheirSignAndLeadingZeros() throws IOException {
+        Flightpath flightpath = new Flightpath();
+        LongLat start = new LongLat(-0.00000004, 0.0000123);
+        LongLat middle = new LongLat(-0.0000123, -1.5);
+        flightpath.add("order", start, 0, middle);
+        flightpath.add("order", middle, 90, new LongLat(10, -0.99999996));
+        File file = folder.newFile("drone.geojson");
+        new GeoJsonWriter().write(file, flightpath);
+        String json = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        assertEquals("{\"type\":\"FeatureCollection\",\"features\":[{\"type\":\"Feature\",\"geometry\":"
+                + "{\"type\":\"LineString\",\"coordinates\":[[0,0.0000123],[-0.0000123,-1.5],[10,-1]]},"
+                + "\"properties\":{}}]}", json);
+        assertPoints(flightpath, read(file, false).get(0), GeoJsonWriter.DEFAULT_PRECISION);
+    }
+
+    @Test
+    public void fleetIsWrittenAsOneFeaturePerDrone() throws IOException {
+        List<Flightpath> flightpaths = List.of(flightpath(new LongLat(-3.186874, 55.944494), 50),
+                flightpath(new LongLat(-3.1913, 55.9456), 80));
+        File file = folder.newFile("fleet.geojson");
+        new GeoJsonWriter().write(file, flightpaths);
+        List<Feature> features = read(file, false);
+        assertEquals(2, features.size());
+        for (int drone = 0; drone < 2; drone++) {
+            assertPoints(flightpaths.get(drone), features.get(drone), GeoJsonWriter.DEFAULT_PRECISION);
+            assertEquals(drone, features.get(drone).getNumberProperty("droneId").intValue());
+        }
+    }
+
+    @Test
+    public void droneWithoutMovesIsLeftOut() throws IOException {
+        List<Flightpath> flightpaths = List.of(new Flightpath(), flightpath(new LongLat(-3.1913, 55.9456), 20),
+                new Flightpath());
+        File file = folder.newFile("fleet.geojson");
+        new GeoJsonWriter().write(file, flightpaths);
+        List<Feature> features = read(file, false);
+        assertEquals(1, features.size());
+        assertEquals(1, features.get(0).getNumberProperty("droneId").intValue());
+        assertPoints(flightpaths.get(1), features.get(0), GeoJsonWriter.DEFAULT_PRECISION);
+    }
+}
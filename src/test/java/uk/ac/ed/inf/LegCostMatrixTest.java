@@ -0,0 +1,92 @@
+package uk.ac.ed.inf;
+
+import org.junit.Test;
+
+import java.awt.geom.Line2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests that LegCostMatrix plans the legs it should, falls back for the rest, and gives the same
+ * table when it is extended with delivery points as when it is built with them from the start.
+ */
+public class LegCostMatrixTest {
+    /** the corners of a square no-fly zone in the middle of the confinement area, counter-clockwise */
+    private static final List<LongLat> SQUARE = Arrays.asList(
+            new LongLat(-3.1900, 55.9435), new LongLat(-3.1870, 55.9435),
+            new LongLat(-3.1870, 55.9450), new LongLat(-3.1900, 55.9450));
+    /** the point the drone starts from and returns to */
+    private static final LongLat BASE = new LongLat(-3.186874, 55.944494);
+    /** the shops, on either side of the no-fly zone */
+    private static final List<LongLat> SHOPS = Arrays.asList(
+            new LongLat(-3.1920, 55.9430), new LongLat(-3.1885, 55.9458));
+    /** the delivery points known at the start of the day */
+    private static final List<LongLat> FIRST_DELIVERIES = Arrays.asList(
+            new LongLat(-3.1920, 55.9458), new LongLat(-3.1850, 55.9430));
+    /** the delivery points added later, one of which is already in the table */
+    private static final List<LongLat> LATER_DELIVERIES = Arrays.asList(
+            new LongLat(-3.1885, 55.9430), new LongLat(-3.1920, 55.9458), new LongLat(-3.1910, 55.9442));
+    /** a cost which cannot be mistaken for a planned leg */
+    private static final LegCost FALLBACK = (from, to) -> 1000 + from.distanceTo(to) / LongLat.MOVE_LENGTH;
+
+    /**
+     * @return a leg planner which avoids the square no-fly zone
+     */
+    private static LegPlanner planner() {
+        List<Line2D.Double> edges = new ArrayList<>();
+        for (int i = 0; i < SQUARE.size(); i++) {
+            LongLat start = SQUARE.get(i);
+            LongLat end = SQUARE.get((i + 1) % SQUARE.size());
+            edges.add(new Line2D.Double(start.longitude, start.latitude, end.longitude, end.latitude));
+        }
+        return new LegPlanner(new NoFlyIndex(edges));
+    }
+
+    @Test
+    public void extendedTableAgreesWithTableBuiltFromScratch() {
+        LegPlanner planner = planner();
+        List<LongLat> allDeliveries = new ArrayList<>(FIRST_DELIVERIES);
+        allDeliveries.addAll(LATER_DELIVERIES);
+        LegCostMatrix scratch = new LegCostMatrix(planner, SHOPS, allDeliveries, BASE, FALLBACK);
+        LegCostMatrix first = new LegCostMatrix(planner, SHOPS, FIRST_DELIVERIES, BASE, FALLBACK);
+        LegCostMatrix extended = new LegCostMatrix(first, planner, LATER_DELIVERIES, ForkJoinPool.commonPool());
+
+        List<LongLat> points = scratch.getPoints();
+        assertEquals(7, points.size());
+        assertEquals(points, extended.getPoints());
+        for (LongLat from : points) {
+            for (LongLat to : points) {
+                assertEquals(from + " to " + to, scratch.moves(from, to), extended.moves(from, to), 0);
+            }
+        }
+        assertEquals(5, first.getPoints().size());
+    }
+
+    @Test
+    public void legsBetweenDeliveriesUseTheFallback() {
+        LegCostMatrix table = new LegCostMatrix(planner(), SHOPS, FIRST_DELIVERIES, BASE, FALLBACK);
+        LongLat first = FIRST_DELIVERIES.get(0);
+        LongLat second = FIRST_DELIVERIES.get(1);
+        assertEquals(FALLBACK.moves(first, second), table.moves(first, second), 0);
+        assertEquals(0, table.moves(first, first), 0);
+        assertEquals(-1, table.indexOf(LATER_DELIVERIES.get(2)));
+        assertEquals(FALLBACK.moves(BASE, LATER_DELIVERIES.get(2)), table.moves(BASE, LATER_DELIVERIES.get(2)), 0);
+    }
+
+    @Test
+    public void legsToAndFromShopsAreThePlannedLegs() {
+        LegPlanner planner = planner();
+        LegCostMatrix table = new LegCostMatrix(planner, SHOPS, FIRST_DELIVERIES, BASE, FALLBACK);
+        for (LongLat shop : SHOPS) {
+            assertEquals(planner.plan(BASE, shop).length, table.moves(BASE, shop), 0);
+            for (LongLat delivery : FIRST_DELIVERIES) {
+                assertEquals(planner.plan(shop, delivery).length, table.moves(shop, delivery), 0);
+                assertEquals(planner.plan(delivery, shop).length, table.moves(delivery, shop), 0);
+            }
+        }
+    }
+}
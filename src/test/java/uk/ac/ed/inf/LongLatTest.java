@@ -0,0 +1,79 @@
+package uk.ac.ed.inf;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the quantized value semantics and packed keys of LongLat.
+ */
+public class LongLatTest {
+    @Test
+    public void pointsWithinRoundingErrorAreEqualWithTheSameHash() {
+        LongLat point = new LongLat(-3.186874, 55.944494);
+        LongLat moved = new LongLat(-3.186874 + 1e-12, 55.944494 - 1e-12);
+        assertEquals(point, moved);
+        assertEquals(point.hashCode(), moved.hashCode());
+        assertEquals(point.key(), moved.key());
+    }
+
+    @Test
+    public void pointsOneUnitApartAreNotEqual() {
+        LongLat point = new LongLat(-3.186874, 55.944494);
+        assertNotEquals(point, new LongLat(-3.186874 + LongLat.UNIT, 55.944494));
+        assertNotEquals(point, new LongLat(-3.186874, 55.944494 + LongLat.UNIT));
+        assertNotEquals(point.key(), new LongLat(-3.186874, 55.944494 + LongLat.UNIT).key());
+    }
+
+    @Test
+    public void equalPointsAreFoundInASet() {
+        Set<LongLat> points = new HashSet<>();
+        points.add(new LongLat(-3.1913, 55.9456));
+        assertTrue(points.contains(new LongLat(-3.1913, 55.9456)));
+        assertEquals(new LongLat(-3.1913, 55.9456), new LongLat(-3.19130000000001, 55.94559999999999));
+    }
+
+    @Test
+    public void pointIsNotEqualToOtherObjects() {
+        assertNotEquals(new LongLat(0, 0), "0,0");
+        assertNotEquals(new LongLat(0, 0), null);
+    }
+
+    @Test
+    public void keyOfUnitsMatchesKeyOfPoint() {
+        LongLat point = new LongLat(-3.184319, 55.946233);
+        assertEquals(point.key(), LongLat.key(point.getLongitudeUnits(), point.getLatitudeUnits()));
+        assertEquals(LongLat.toUnits(-3.184319), point.getLongitudeUnits());
+    }
+
+    @Test
+    public void keysOfCornersOfConfinementAreaDiffer() {
+        Set<Long> keys = new HashSet<>();
+        keys.add(new LongLat(-3.192473, 55.942617).key());
+        keys.add(new LongLat(-3.184319, 55.942617).key());
+        keys.add(new LongLat(-3.192473, 55.946233).key());
+        keys.add(new LongLat(-3.184319, 55.946233).key());
+        assertEquals(4, keys.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void keyRejectsLongitudeTooFarToPack() {
+        new LongLat(-3.192473 + 3, 55.942617).key();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void keyRejectsLatitudeTooFarToPack() {
+        new LongLat(-3.192473, 55.942617 - 3).key();
+    }
+
+    @Test
+    public void pointsTooFarToPackCanStillBeHashed() {
+        LongLat far = new LongLat(100, -40);
+        assertEquals(far.hashCode(), new LongLat(100, -40).hashCode());
+    }
+}
@@ -0,0 +1,96 @@
+package uk.ac.ed.inf;
+
+import org.junit.Test;
+
+import java.awt.geom.Line2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the lower bound and estimate of MoveEstimator against the legs found by the leg planner,
+ * around a square no-fly zone in the middle of the confinement area.
+ */
+public class MoveEstimatorTest {
+    /** the corners of the square no-fly zone, counter-clockwise */
+    private static final List<LongLat> SQUARE = Arrays.asList(
+            new LongLat(-3.1900, 55.9435), new LongLat(-3.1870, 55.9435),
+            new LongLat(-3.1870, 55.9450), new LongLat(-3.1900, 55.9450));
+    /** points around the no-fly zone, many of which cannot see each other */
+    private static final List<LongLat> POINTS = Arrays.asList(
+            new LongLat(-3.1920, 55.9430), new LongLat(-3.1920, 55.9442),
+            new LongLat(-3.1920, 55.9458), new LongLat(-3.1885, 55.9430),
+            new LongLat(-3.1885, 55.9458), new LongLat(-3.1850, 55.9430),
+            new LongLat(-3.1850, 55.9442), new LongLat(-3.1850, 55.9458));
+
+    /**
+     * @return a leg planner which avoids the square no-fly zone
+     */
+    private static LegPlanner planner() {
+        List<Line2D.Double> edges = new ArrayList<>();
+        for (int i = 0; i < SQUARE.size(); i++) {
+            LongLat start = SQUARE.get(i);
+            LongLat end = SQUARE.get((i + 1) % SQUARE.size());
+            edges.add(new Line2D.Double(start.longitude, start.latitude, end.longitude, end.latitude));
+        }
+        return new LegPlanner(new NoFlyIndex(edges));
+    }
+
+    @Test
+    public void lowerBoundNeverExceedsPlannedLeg() {
+        MoveEstimator estimator = new MoveEstimator(Collections.singletonList(SQUARE));
+        LegPlanner planner = planner();
+        for (LongLat from : POINTS) {
+            for (LongLat to : POINTS) {
+                int[] leg = planner.plan(from, to);
+                assertNotNull(leg);
+                assertTrue(from + " to " + to, estimator.lowerBound(from, to) <= leg.length);
+            }
+        }
+    }
+
+    @Test
+    public void lowerBoundGoesAroundTheNoFlyZone() {
+        MoveEstimator estimator = new MoveEstimator(Collections.singletonList(SQUARE));
+        LongLat west = POINTS.get(1);
+        LongLat east = POINTS.get(6);
+        int straight = (int) Math.ceil(west.distanceTo(east) / LongLat.MOVE_LENGTH - 1);
+        assertTrue(estimator.lowerBound(west, east) > straight);
+    }
+
+    @Test
+    public void estimateIsCloseToPlannedLeg() {
+        MoveEstimator estimator = new MoveEstimator(Collections.singletonList(SQUARE));
+        LegPlanner planner = planner();
+        for (LongLat from : POINTS) {
+            for (LongLat to : POINTS) {
+                int planned = planner.plan(from, to).length;
+                int estimate = estimator.estimate(from, to);
+                assertTrue(from + " to " + to + ": " + estimate + " against " + planned,
+                        Math.abs(estimate - planned) <= Math.max(3, planned / 10));
+            }
+        }
+    }
+
+    @Test
+    public void lowerBoundOfSamePointIsZero() {
+        MoveEstimator estimator = new MoveEstimator(Collections.singletonList(SQUARE));
+        assertEquals(0, estimator.lowerBound(POINTS.get(0), POINTS.get(0)));
+    }
+
+    @Test
+    public void lowerBoundWithoutNoFlyZoneIsStraightLine() {
+        MoveEstimator estimator = new MoveEstimator(Collections.emptyList());
+        for (LongLat from : POINTS) {
+            for (LongLat to : POINTS) {
+                double moves = from.distanceTo(to) / LongLat.MOVE_LENGTH - 1;
+                assertEquals((int) Math.max(0, Math.ceil(moves - 1e-9)), estimator.lowerBound(from, to));
+            }
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package uk.ac.ed.inf;
+
+import com.mapbox.geojson.Point;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests adding and cancelling orders while a path is being flown, and planning the rest of the
+ * day again from where the drone is.
+ */
+public class PathReplanTest {
+    /** the shop each item is sold at */
+    private static final Map<String, String> ITEM_SHOPS = Map.of("a1", "A", "b1", "B");
+    /** the price of each item in pence */
+    private static final Map<String, Integer> ITEM_PRICES = Map.of("a1", 500, "b1", 300);
+
+    /**
+     * @param orders the orders of the day
+     * @return a path which sequences the orders, around a square no-fly zone west of Appleton Tower
+     */
+    private static Path path(Order... orders) {
+        List<Point> square = List.of(
+                Point.fromLngLat(-3.1900, 55.9435), Point.fromLngLat(-3.1870, 55.9435),
+                Point.fromLngLat(-3.1870, 55.9450), Point.fromLngLat(-3.1900, 55.9450),
+                Point.fromLngLat(-3.1900, 55.9435));
+        Map<String, LongLat> shops = new HashMap<>();
+        shops.put("A", new LongLat(-3.1910, 55.9460));
+        shops.put("B", new LongLat(-3.1860, 55.9430));
+        Path path = new Path(new ArrayList<>(List.of(orders)), List.of(square), new ArrayList<>(), shops);
+        path.setOptimiseSequence(true);
+        path.setPrintSummary(false);
+        return path;
+    }
+
+    /**
+     * @param orderNo   the order number
+     * @param longitude the longitude of the delivery point
+     * @param latitude  the latitude of the delivery point
+     * @param items     the items ordered
+     * @return an order of the items, delivered to the point
+     */
+    private static Order order(String orderNo, double longitude, double latitude, String... items) {
+        Order order = new Order(orderNo);
+        order.items.addAll(List.of(items));
+        order.setShops(ITEM_SHOPS);
+        order.setCost(ITEM_PRICES);
+        order.setDeliverTo(new LongLat(longitude, latitude));
+        return order;
+    }
+
+    /**
+     * @param orders the orders delivered
+     * @return the order numbers of the orders, in the order they were delivered
+     */
+    private static List<String> orderNumbers(List<Order> orders) {
+        List<String> numbers = new ArrayList<>();
+        for (Order order : orders) {
+            numbers.add(order.orderNo);
+        }
+        return numbers;
+    }
+
+    @Test
+    public void orderAddedMidDayIsDelivered() {
+        Path path = path(order("first", -3.1880, 55.9455, "a1"), order("second", -3.1895, 55.9428, "b1"));
+        path.begin();
+        assertTrue(path.deliverNext());
+        path.addOrder(order("late", -3.1920, 55.9440, "a1", "b1"));
+        while (path.deliverNext()) {
+            // deliver the rest of the day
+        }
+        List<String> delivered = orderNumbers(path.finish());
+        assertEquals(3, delivered.size());
+        assertTrue(delivered.contains("late"));
+    }
+
+    @Test
+    public void cancelledOrderIsNotDelivered() {
+        Path path = path(order("first", -3.1880, 55.9455, "a1"), order("second", -3.1895, 55.9428, "b1"),
+                order("third", -3.1865, 55.9445, "a1", "b1"));
+        path.begin();
+        assertTrue(path.deliverNext());
+        String deliveredFirst = path.currentOrder.orderNo;
+        String cancelled = deliveredFirst.equals("third") ? "second" : "third";
+        assertTrue(path.cancelOrder(cancelled));
+        assertFalse(path.cancelOrder(cancelled));
+        assertFalse(path.cancelOrder(deliveredFirst));
+        assertFalse(path.cancelOrder("unknown"));
+        while (path.deliverNext()) {
+            // deliver the rest of the day
+        }
+        List<String> delivered = orderNumbers(path.finish());
+        assertEquals(2, delivered.size());
+        assertFalse(delivered.contains(cancelled));
+    }
+
+    @Test
+    public void replanStartsFromCurrentPositionWithMovesLeft() {
+        Order first = order("first", -3.1880, 55.9455, "a1");
+        Order second = order("second", -3.1895, 55.9428, "b1");
+        Path path = path(first, second);
+        path.begin();
+        assertTrue(path.deliverNext());
+        Flightpath flightpath = path.getFlightpath();
+        OrderSequencer sequencer = path.sequencerFor(List.of(second));
+        assertEquals(flightpath.getLongitude(flightpath.size()), sequencer.getStart().longitude, 0);
+        assertEquals(flightpath.getLatitude(flightpath.size()), sequencer.getStart().latitude, 0);
+        assertEquals(Path.MAX_MOVES - 100 - flightpath.size(), sequencer.getBudget(), 0);
+    }
+
+    @Test
+    public void replanReusesTheDaysLegCosts() {
+        Order first = order("first", -3.1880, 55.9455, "a1");
+        Order second = order("second", -3.1895, 55.9428, "b1");
+        Path path = path(first, second);
+        path.begin();
+        LegCostMatrix planned = path.getLegCosts();
+        assertTrue(path.deliverNext());
+
+        // an order to a point already in the table leaves the table as it is
+        path.addOrder(order("same-place", -3.1895, 55.9428, "a1"));
+        assertTrue(path.deliverNext());
+        assertSame(planned, path.getLegCosts());
+        assertSame(planned, path.sequencerFor(List.of()).getLegCost());
+
+        // an order to a new point extends the table, keeping every leg already planned
+        path.addOrder(order("new-place", -3.1920, 55.9440, "b1"));
+        LegCostMatrix extended = path.getLegCosts();
+        assertNotSame(planned, extended);
+        List<LongLat> points = planned.getPoints();
+        assertEquals(points, extended.getPoints().subList(0, points.size()));
+        for (int from = 0; from < points.size(); from++) {
+            for (int to = 0; to < points.size(); to++) {
+                assertEquals(planned.moves(from, to), extended.moves(from, to), 0);
+            }
+        }
+    }
+}
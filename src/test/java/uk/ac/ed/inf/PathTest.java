@@ -0,0 +1,85 @@
+package uk.ac.ed.inf;
+
+import com.mapbox.geojson.Point;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the convex hulls Path builds around the polygons of the no-fly zone.
+ */
+public class PathTest {
+    /**
+     * @param hull the corners of a hull
+     * @return twice the signed area of the hull, positive if its corners are counter-clockwise
+     */
+    private static double signedArea(List<LongLat> hull) {
+        double area = 0;
+        for (int i = 0; i < hull.size(); i++) {
+            LongLat a = hull.get(i);
+            LongLat b = hull.get((i + 1) % hull.size());
+            area += a.longitude * b.latitude - b.longitude * a.latitude;
+        }
+        return area;
+    }
+
+    /**
+     * @param hull        the corners of a hull
+     * @param coordinates the longitude and latitude of each corner the hull should have, in order
+     */
+    private static void assertCorners(List<LongLat> hull, double... coordinates) {
+        assertEquals(coordinates.length / 2, hull.size());
+        for (int i = 0; i < hull.size(); i++) {
+            assertEquals(coordinates[2 * i], hull.get(i).longitude, 0);
+            assertEquals(coordinates[2 * i + 1], hull.get(i).latitude, 0);
+        }
+    }
+
+    @Test
+    public void hullOfSquareIsCounterClockwiseFromLeftmostPoint() {
+        List<LongLat> hull = Path.convexHull(List.of(
+                Point.fromLngLat(0, 0), Point.fromLngLat(0, 1), Point.fromLngLat(1, 1),
+                Point.fromLngLat(1, 0), Point.fromLngLat(0, 0)));
+        assertCorners(hull, 0, 0, 1, 0, 1, 1, 0, 1);
+        assertTrue(signedArea(hull) > 0);
+    }
+
+    @Test
+    public void hullDropsRepeatedInteriorAndCollinearPoints() {
+        List<LongLat> hull = Path.convexHull(List.of(
+                Point.fromLngLat(0, 0), Point.fromLngLat(0.5, 0), Point.fromLngLat(1, 0),
+                Point.fromLngLat(1, 0), Point.fromLngLat(1, 0.5), Point.fromLngLat(1, 1),
+                Point.fromLngLat(0.5, 0.5), Point.fromLngLat(0, 1), Point.fromLngLat(0, 0.5),
+                Point.fromLngLat(0, 0)));
+        assertCorners(hull, 0, 0, 1, 0, 1, 1, 0, 1);
+    }
+
+    @Test
+    public void hullOfConcavePolygonSkipsTheDent() {
+        List<LongLat> hull = Path.convexHull(List.of(
+                Point.fromLngLat(0, 0), Point.fromLngLat(2, 0), Point.fromLngLat(2, 2),
+                Point.fromLngLat(1, 1), Point.fromLngLat(0, 2), Point.fromLngLat(0, 0)));
+        assertEquals(4, hull.size());
+        for (LongLat corner : hull) {
+            assertTrue(corner.longitude != 1 || corner.latitude != 1);
+        }
+        assertTrue(signedArea(hull) > 0);
+    }
+
+    @Test
+    public void hullOfRepeatedPointIsThatPoint() {
+        List<LongLat> hull = Path.convexHull(List.of(
+                Point.fromLngLat(1, 1), Point.fromLngLat(1, 1), Point.fromLngLat(1, 1)));
+        assertCorners(hull, 1, 1);
+    }
+
+    @Test
+    public void hullOfPointsInALineIsItsEnds() {
+        List<LongLat> hull = Path.convexHull(List.of(
+                Point.fromLngLat(0, 0), Point.fromLngLat(1, 1), Point.fromLngLat(2, 2), Point.fromLngLat(0, 0)));
+        assertCorners(hull, 0, 0, 2, 2);
+    }
+}
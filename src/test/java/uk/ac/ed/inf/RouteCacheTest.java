@@ -0,0 +1,73 @@
+package uk.ac.ed.inf;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests the keys and least recently used eviction of RouteCache.
+ */
+public class RouteCacheTest {
+    /** the width and height of the cells used in these tests, in degrees */
+    private static final double CELL_SIZE = 0.001;
+    /** a goal at Appleton Tower */
+    private static final LongLat GOAL = new LongLat(-3.186874, 55.944494);
+
+    @Test
+    public void startInTheSameCellHits() {
+        RouteCache cache = new RouteCache(4, CELL_SIZE);
+        int[] leg = {0, 10, 20};
+        cache.put(new LongLat(-3.1905, 55.9431), GOAL, leg);
+        assertArrayEquals(leg, cache.get(new LongLat(-3.1906, 55.9432), GOAL));
+    }
+
+    @Test
+    public void startInAnotherCellOrAnotherGoalMisses() {
+        RouteCache cache = new RouteCache(4, CELL_SIZE);
+        LongLat from = new LongLat(-3.1905, 55.9431);
+        cache.put(from, GOAL, new int[]{0});
+        assertNull(cache.get(new LongLat(-3.1915, 55.9431), GOAL));
+        assertNull(cache.get(from, new LongLat(-3.186774, 55.944494)));
+    }
+
+    @Test
+    public void leastRecentlyUsedLegIsEvicted() {
+        RouteCache cache = new RouteCache(2, CELL_SIZE);
+        LongLat first = new LongLat(-3.1915, 55.9431);
+        LongLat second = new LongLat(-3.1905, 55.9431);
+        LongLat third = new LongLat(-3.1895, 55.9431);
+        cache.put(first, GOAL, new int[]{1});
+        cache.put(second, GOAL, new int[]{2});
+        cache.put(third, GOAL, new int[]{3});
+        assertEquals(2, cache.size());
+        assertNull(cache.get(first, GOAL));
+        assertArrayEquals(new int[]{2}, cache.get(second, GOAL));
+        assertArrayEquals(new int[]{3}, cache.get(third, GOAL));
+    }
+
+    @Test
+    public void getMakesALegRecentlyUsed() {
+        RouteCache cache = new RouteCache(2, CELL_SIZE);
+        LongLat first = new LongLat(-3.1915, 55.9431);
+        LongLat second = new LongLat(-3.1905, 55.9431);
+        LongLat third = new LongLat(-3.1895, 55.9431);
+        cache.put(first, GOAL, new int[]{1});
+        cache.put(second, GOAL, new int[]{2});
+        cache.get(first, GOAL);
+        cache.put(third, GOAL, new int[]{3});
+        assertArrayEquals(new int[]{1}, cache.get(first, GOAL));
+        assertNull(cache.get(second, GOAL));
+    }
+
+    @Test
+    public void removedLegMisses() {
+        RouteCache cache = new RouteCache(2, CELL_SIZE);
+        LongLat from = new LongLat(-3.1905, 55.9431);
+        cache.put(from, GOAL, new int[]{0});
+        cache.remove(new LongLat(-3.1906, 55.9432), GOAL);
+        assertEquals(0, cache.size());
+        assertNull(cache.get(from, GOAL));
+    }
+}
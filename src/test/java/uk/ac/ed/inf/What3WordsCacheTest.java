@@ -0,0 +1,146 @@
+package uk.ac.ed.inf;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that What3WordsCache saves addresses between runs and skips lines which were left
+ * unfinished or damaged.
+ */
+public class What3WordsCacheTest {
+    /** a folder for the cache files, deleted after each test */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /** the coordinates of the first address used in the tests */
+    private static final LongLat FIRST = new LongLat(-3.186874, 55.944494);
+    /** the coordinates of the second address used in the tests */
+    private static final LongLat SECOND = new LongLat(-3.191594, 55.943658);
+
+    /**
+     * @param file the cache file
+     * @param text the text appended to the end of the file
+     * @throws IOException if the file cannot be written
+     */
+    private static void append(File file, String text) throws IOException {
+        Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+    }
+
+    /**
+     * @param file the cache file
+     * @return the contents of the file
+     * @throws IOException if the file cannot be read
+     */
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param expected the coordinates the address should have
+     * @param actual   the coordinates found in the cache, or null
+     */
+    private static void assertLocation(LongLat expected, LongLat actual) {
+        assertNotNull(actual);
+        assertEquals(expected.longitude, actual.longitude, 0);
+        assertEquals(expected.latitude, actual.latitude, 0);
+    }
+
+    @Test
+    public void flushedAddressesAreReadByTheNextCache() throws IOException {
+        File file = new File(folder.getRoot(), "cache.tsv");
+        What3WordsCache cache = new What3WordsCache(file);
+        cache.put("army.monks.grapes", FIRST);
+        cache.put("linked.pads.cigar", SECOND);
+        cache.flush();
+
+        What3WordsCache reloaded = new What3WordsCache(file);
+        assertLocation(FIRST, reloaded.get("army.monks.grapes"));
+        assertLocation(SECOND, reloaded.get("linked.pads.cigar"));
+        assertNull(reloaded.get("blocks.found.civic"));
+    }
+
+    @Test
+    public void addressesAreOnlyWrittenOnce() throws IOException {
+        File file = new File(folder.getRoot(), "cache.tsv");
+        What3WordsCache cache = new What3WordsCache(file);
+        cache.put("army.monks.grapes", FIRST);
+        cache.flush();
+        cache.put("army.monks.grapes", FIRST);
+        cache.flush();
+        assertEquals(1, read(file).split("\n").length);
+    }
+
+    @Test
+    public void unfinishedLastLineIsSkipped() throws IOException {
+        File file = new File(folder.getRoot(), "cache.tsv");
+        What3WordsCache cache = new What3WordsCache(file);
+        cache.put("army.monks.grapes", FIRST);
+        cache.flush();
+        append(file, "linked.pads.cigar\t-3.191594\t55.9");
+
+        What3WordsCache reloaded = new What3WordsCache(file);
+        assertLocation(FIRST, reloaded.get("army.monks.grapes"));
+        assertNull(reloaded.get("linked.pads.cigar"));
+    }
+
+    @Test
+    public void flushAfterUnfinishedLineStartsANewLine() throws IOException {
+        File file = new File(folder.getRoot(), "cache.tsv");
+        What3WordsCache cache = new What3WordsCache(file);
+        cache.put("army.monks.grapes", FIRST);
+        cache.flush();
+        append(file, "linked.pads.cigar\t-3.191594\t55.9");
+
+        What3WordsCache resumed = new What3WordsCache(file);
+        resumed.put("blocks.found.civic", SECOND);
+        resumed.flush();
+        assertTrue(read(file).contains("55.9\nblocks.found.civic\t"));
+
+        What3WordsCache reloaded = new What3WordsCache(file);
+        assertLocation(FIRST, reloaded.get("army.monks.grapes"));
+        assertLocation(SECOND, reloaded.get("blocks.found.civic"));
+        assertNull(reloaded.get("linked.pads.cigar"));
+    }
+
+    @Test
+    public void linesWithWrongOrMissingChecksumAreSkipped() throws IOException {
+        File file = folder.newFile("cache.tsv");
+        append(file, "army.monks.grapes\t-3.186874\t55.944494\n");
+        append(file, "linked.pads.cigar\t-3.191594\t55.943658\t0\n");
+
+        What3WordsCache cache = new What3WordsCache(file);
+        assertNull(cache.get("army.monks.grapes"));
+        assertNull(cache.get("linked.pads.cigar"));
+    }
+
+    @Test
+    public void changedCoordinatesFailTheChecksum() throws IOException {
+        File file = new File(folder.getRoot(), "cache.tsv");
+        What3WordsCache cache = new What3WordsCache(file);
+        cache.put("army.monks.grapes", FIRST);
+        cache.flush();
+        Files.write(file.toPath(), read(file).replace("55.944494", "55.944495").getBytes(StandardCharsets.UTF_8));
+
+        assertNull(new What3WordsCache(file).get("army.monks.grapes"));
+    }
+
+    @Test
+    public void cacheWithoutFileIsKeptInMemory() {
+        What3WordsCache cache = new What3WordsCache(null);
+        cache.put("army.monks.grapes", FIRST);
+        cache.flush();
+        assertLocation(FIRST, cache.get("army.monks.grapes"));
+    }
+}